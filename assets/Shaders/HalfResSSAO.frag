@@ -0,0 +1,61 @@
+uniform sampler2D m_DepthTexture;
+uniform vec2 m_Resolution;
+uniform vec2 m_FrustumNearFar;
+uniform vec3 m_FrustumCorner;
+uniform float m_SampleRadius;
+uniform float m_Intensity;
+uniform float m_Scale;
+uniform float m_Bias;
+
+varying vec2 texCoord;
+
+const int SAMPLES = 12;
+
+float linearDepth(float depthv) {
+    return (2.0 * m_FrustumNearFar.x) / (m_FrustumNearFar.y + m_FrustumNearFar.x - depthv * (m_FrustumNearFar.y - m_FrustumNearFar.x));
+}
+
+// view space position, same reconstruction as jME's SSAO
+vec3 getPosition(vec2 uv) {
+    float depth = linearDepth(texture2D(m_DepthTexture, uv).r);
+    float x = mix(-m_FrustumCorner.x, m_FrustumCorner.x, uv.x);
+    float y = mix(-m_FrustumCorner.y, m_FrustumCorner.y, uv.y);
+    return depth * vec3(x, y, m_FrustumCorner.z);
+}
+
+void main() {
+    float depthv = texture2D(m_DepthTexture, texCoord).r;
+    if (depthv >= 1.0) {
+        // sky, nothing to occlude
+        gl_FragColor = vec4(1.0, 1.0, 0.0, 1.0);
+        return;
+    }
+
+    vec3 position = getPosition(texCoord);
+
+    // no normal pass, the normal comes from the neighbouring depths
+    vec2 texel = 1.0 / m_Resolution;
+    vec3 dx = getPosition(texCoord + vec2(texel.x, 0.0)) - position;
+    vec3 dy = getPosition(texCoord + vec2(0.0, texel.y)) - position;
+    vec3 normal = normalize(cross(dy, dx));
+
+    // spiral of samples, rotated per pixel so the banding turns into noise the upsample smooths out
+    float angle = fract(sin(dot(texCoord, vec2(12.9898, 78.233))) * 43758.5453) * 6.2831853;
+    float rad = m_SampleRadius / position.z;
+
+    float ao = 0.0;
+    for (int i = 0; i < SAMPLES; i++) {
+        float fi = float(i);
+        float r = sqrt((fi + 0.5) / float(SAMPLES));
+        float a = angle + fi * 2.3999632;
+        vec2 uv = texCoord + vec2(cos(a), sin(a)) * r * rad;
+
+        vec3 diff = getPosition(uv) - position;
+        float d = length(diff);
+        vec3 v = diff / max(d, 0.0001);
+        ao += max(0.0, dot(normal, v) - m_Bias) * (1.0 / (1.0 + d * m_Scale)) * m_Intensity;
+    }
+    ao = clamp(1.0 - ao / float(SAMPLES), 0.0, 1.0);
+
+    gl_FragColor = vec4(ao, linearDepth(depthv), 0.0, 1.0);
+}
@@ -0,0 +1,47 @@
+uniform sampler2D m_Texture;
+uniform sampler2D m_DepthTexture;
+uniform sampler2D m_SSAOMap;
+uniform vec2 m_LowResolution;
+uniform vec2 m_FrustumNearFar;
+uniform float m_DepthSharpness;
+
+varying vec2 texCoord;
+
+float linearDepth(float depthv) {
+    return (2.0 * m_FrustumNearFar.x) / (m_FrustumNearFar.y + m_FrustumNearFar.x - depthv * (m_FrustumNearFar.y - m_FrustumNearFar.x));
+}
+
+void main() {
+    vec4 color = texture2D(m_Texture, texCoord);
+    float depth = linearDepth(texture2D(m_DepthTexture, texCoord).r);
+
+    // the 4 low res texels around this pixel, bilinear weights times how well their depth matches.
+    // keeps the occlusion of a wall from bleeding onto the object in front of it
+    vec2 lowPos = texCoord * m_LowResolution - 0.5;
+    vec2 base = floor(lowPos);
+    vec2 f = lowPos - base;
+
+    float ao = 0.0;
+    float total = 0.0;
+    float nearest = 1.0;
+    float nearestDiff = 1000.0;
+    for (int y = 0; y < 2; y++) {
+        for (int x = 0; x < 2; x++) {
+            vec2 offset = vec2(float(x), float(y));
+            vec2 low = texture2D(m_SSAOMap, (base + offset + 0.5) / m_LowResolution).rg;
+            vec2 bilinear = mix(1.0 - f, f, offset);
+            float diff = abs(depth - low.g) / max(depth, 0.0001);
+            float w = bilinear.x * bilinear.y * exp(-diff * m_DepthSharpness);
+            ao += low.r * w;
+            total += w;
+            if (diff < nearestDiff) {
+                nearestDiff = diff;
+                nearest = low.r;
+            }
+        }
+    }
+    // every sample is on another surface, just take the closest one
+    ao = total > 0.0001 ? ao / total : nearest;
+
+    gl_FragColor = vec4(color.rgb * ao, color.a);
+}
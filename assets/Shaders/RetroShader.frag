@@ -1,5 +1,55 @@
-varying vec4 vertColor;
+#import "Common/ShaderLib/GLSLCompat.glsllib"
+
+uniform vec4 m_BaseColor;
+uniform vec4 m_LightColor;
+uniform vec4 m_AmbientColor;
+uniform float m_ColorSteps;
+
+#if defined(COLOR_MAP) || defined(EMISSIVE_MAP)
+    varying vec2 texCoord;
+#endif
+#ifdef COLOR_MAP
+    uniform sampler2D m_ColorMap;
+#endif
+#ifdef EMISSIVE_MAP
+    uniform sampler2D m_EmissiveMap;
+#endif
+#ifdef EMISSIVE
+    uniform vec4 m_Emissive;
+#endif
+#ifdef DISCARD_ALPHA
+    uniform float m_AlphaDiscardThreshold;
+#endif
+
+varying float diffuse;
 
 void main() {
-    gl_FragColor = vertColor;
-}
\ No newline at end of file
+    vec4 color = m_BaseColor;
+    #ifdef COLOR_MAP
+        color *= texture2D(m_ColorMap, texCoord);
+    #endif
+    #ifdef DISCARD_ALPHA
+        if (color.a < m_AlphaDiscardThreshold) {
+            discard;
+        }
+    #endif
+
+    // a few flat bands of light instead of a smooth falloff
+    float light = diffuse;
+    if (m_ColorSteps > 0.0) {
+        light = floor(light * m_ColorSteps + 0.5) / m_ColorSteps;
+    }
+    vec3 result = color.rgb * (m_AmbientColor.rgb + m_LightColor.rgb * light);
+
+    #ifdef EMISSIVE_MAP
+        vec4 emissive = texture2D(m_EmissiveMap, texCoord);
+        #ifdef EMISSIVE
+            emissive *= m_Emissive;
+        #endif
+        result += emissive.rgb;
+    #elif defined(EMISSIVE)
+        result += m_Emissive.rgb;
+    #endif
+
+    gl_FragColor = vec4(result, color.a);
+}
@@ -1,18 +1,26 @@
-uniform mat4 g_WorldViewProjectionMatrix;
-uniform mat3 g_WorldMatrixInverseTranspose;
+#import "Common/ShaderLib/GLSLCompat.glsllib"
+#import "Common/ShaderLib/Instancing.glsllib"
+
+uniform vec3 m_LightDir;
 
 // attributes
 attribute vec3 inPosition;
 attribute vec3 inNormal;
+#if defined(COLOR_MAP) || defined(EMISSIVE_MAP)
+    attribute vec2 inTexCoord;
+    varying vec2 texCoord;
+#endif
 
-// output
-varying vec4 vertColor;
+// output, the light is only computed per vertex, the banding happens per pixel
+varying float diffuse;
 
 void main() {
-    gl_Position = g_WorldViewProjectionMatrix * vec4(inPosition, 1.0);
+    gl_Position = TransformWorldViewProjection(vec4(inPosition, 1.0));
+
+    vec3 worldNormal = normalize(TransformWorldNormal(inNormal));
+    diffuse = max(dot(worldNormal, -normalize(m_LightDir)), 0.0);
 
-    // DEBUG: Visualizing Normals
-    // We convert the normal direction (-1 to 1) to color range (0 to 1)
-    vec3 debugNormal = normalize(g_WorldMatrixInverseTranspose * inNormal);
-    vertColor = vec4(debugNormal * 0.5 + 0.5, 1.0);
-}
\ No newline at end of file
+    #if defined(COLOR_MAP) || defined(EMISSIVE_MAP)
+        texCoord = inTexCoord;
+    #endif
+}
@@ -0,0 +1,28 @@
+uniform sampler2D m_Texture;
+uniform float m_Scale;
+uniform vec2 m_TexelSize;
+uniform float m_Sharpness;
+
+varying vec2 texCoord;
+
+void main() {
+    // the scene only fills the bottom left corner of the buffer
+    vec2 maxUv = vec2(m_Scale) - m_TexelSize * 0.5;
+    vec2 uv = min(texCoord * m_Scale, maxUv);
+
+    vec3 center = texture2D(m_Texture, uv).rgb;
+    vec3 n = texture2D(m_Texture, min(uv + vec2(0.0, m_TexelSize.y), maxUv)).rgb;
+    vec3 s = texture2D(m_Texture, max(uv - vec2(0.0, m_TexelSize.y), m_TexelSize * 0.5)).rgb;
+    vec3 e = texture2D(m_Texture, min(uv + vec2(m_TexelSize.x, 0.0), maxUv)).rgb;
+    vec3 w = texture2D(m_Texture, max(uv - vec2(m_TexelSize.x, 0.0), m_TexelSize * 0.5)).rgb;
+
+    // unsharp mask, stronger the more it was scaled up. nothing happens at full res
+    float amount = m_Sharpness * clamp((1.0 - m_Scale) * 2.0, 0.0, 1.0);
+    vec3 blur = (n + s + e + w) * 0.25;
+    vec3 color = center + (center - blur) * amount;
+
+    // stay inside the neighbourhood so edges don't get halos
+    vec3 lo = min(center, min(min(n, s), min(e, w)));
+    vec3 hi = max(center, max(max(n, s), max(e, w)));
+    gl_FragColor = vec4(clamp(color, lo, hi), 1.0);
+}
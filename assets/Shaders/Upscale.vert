@@ -0,0 +1,13 @@
+uniform mat4 g_WorldViewProjectionMatrix;
+
+// attributes
+attribute vec3 inPosition;
+attribute vec2 inTexCoord;
+
+// output
+varying vec2 texCoord;
+
+void main() {
+    gl_Position = g_WorldViewProjectionMatrix * vec4(inPosition, 1.0);
+    texCoord = inTexCoord;
+}
@@ -0,0 +1,82 @@
+package com.mygame;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.bullet.util.CollisionShapeFactory;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Node;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * the depth of field autofocus ray: the old per-frame rootNode.collideWith against
+ * the FocusPicker BVH and its bullet ray test backend (forced to query on every call).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutofocusBenchmark {
+
+    private Node rootNode;
+    private Camera cam;
+    private FocusPicker picker;
+    private FocusPicker physicsPicker;
+
+    @Setup
+    public void setup() {
+        BenchmarkScene.loadBullet();
+        rootNode = BenchmarkScene.loadScene(BenchmarkScene.assetManager());
+
+        cam = new Camera(1280, 720);
+        cam.setFrustumPerspective(45f, 1280f / 720f, 0.01f, 1000f);
+        cam.setLocation(new Vector3f(0.1f, 5.3f, 1.1f));
+        cam.lookAt(new Vector3f(2f, 4f, -8f), Vector3f.UNIT_Y);
+
+        picker = new FocusPicker();
+        picker.build(rootNode);
+        picker.setQueryInterval(1);
+
+        // the room as a static mesh body, like Main.attachOfficePhysics
+        PhysicsSpace space = new PhysicsSpace(PhysicsSpace.BroadphaseType.DBVT);
+        PhysicsRigidBody office = new PhysicsRigidBody(CollisionShapeFactory.createMeshShape(rootNode), 0);
+        space.addCollisionObject(office);
+        physicsPicker = new FocusPicker();
+        physicsPicker.setPhysicsTarget(space, office);
+        physicsPicker.setBackend(FocusPicker.Backend.PHYSICS);
+        physicsPicker.setQueryInterval(1);
+    }
+
+    @Benchmark
+    public float rootNodeCollideWith() {
+        // what simpleUpdate used to do every frame
+        Ray ray = new Ray(cam.getLocation(), cam.getDirection());
+        CollisionResults results = new CollisionResults();
+        rootNode.collideWith(ray, results);
+        return results.size() > 0 ? results.getClosestCollision().getDistance() : -1f;
+    }
+
+    @Benchmark
+    public float focusPickerBvh() {
+        return picker.pick(cam);
+    }
+
+    @Benchmark
+    public float focusPickerPhysics() {
+        return physicsPicker.pick(cam);
+    }
+}
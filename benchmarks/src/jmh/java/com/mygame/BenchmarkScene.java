@@ -0,0 +1,63 @@
+package com.mygame;
+
+import com.jme3.app.LegacyApplication;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.input.InputManager;
+import com.jme3.input.dummy.DummyKeyInput;
+import com.jme3.input.dummy.DummyMouseInput;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.system.NativeLibraryLoader;
+
+/**
+ * shared setup for the microbenchmarks: loads the office scene from the assets project
+ * the same way Main does, without a window or GL context.
+ */
+final class BenchmarkScene {
+
+    static final String SCENE = "Scenes/OfficeScene.j3o";
+
+    private static boolean bulletLoaded = false;
+
+    private BenchmarkScene() {}
+
+    static AssetManager assetManager() {
+        return new DesktopAssetManager(true);
+    }
+
+    /**
+     * loads the scene under a fresh root node with up to date world bounds.
+     */
+    static Node loadScene(AssetManager assetManager) {
+        Node root = new Node("Root Node");
+        Spatial officeScene = assetManager.loadModel(SCENE);
+        root.attachChild(officeScene);
+        root.updateLogicalState(0);
+        root.updateGeometricState();
+        return root;
+    }
+
+    /**
+     * bullet natives, normally loaded by BulletAppState.
+     */
+    static synchronized void loadBullet() {
+        if (!bulletLoaded) {
+            NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+            bulletLoaded = true;
+        }
+    }
+
+    /**
+     * just enough of an Application for the gameplay classes that take one
+     * (asset manager, input manager and camera), nothing is started.
+     */
+    static class StubApplication extends LegacyApplication {
+        StubApplication(AssetManager assetManager) {
+            this.assetManager = assetManager;
+            this.cam = new Camera(1280, 720);
+            this.inputManager = new InputManager(new DummyMouseInput(), new DummyKeyInput(), null, null);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.mygame;
+
+import com.jme3.audio.AudioContext;
+import com.jme3.audio.AudioRenderer;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Node;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * the per-frame proximity checks of the interactables: ProximityTriggers with the real DoorExit
+ * and Sound listeners in it (the radio volume falloff runs in Sound's onStay), plus extra zones
+ * spread over a big level to show the grid doesn't care about them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProximityBenchmark {
+
+    // near = inside the door zone and the radio's hearing range, far = outside all of them
+    @Param({"near", "far"})
+    public String position;
+
+    // extra zones spread over a big level, on top of the door and the radio
+    @Param({"0", "500"})
+    public int extraZones;
+
+    private Camera cam;
+    private ProximityTriggers triggers;
+    private DoorExit doorExit;
+    private Sound sound;
+    private final Vector3f basePosition = new Vector3f();
+    private final Vector3f moved = new Vector3f();
+    private int frame = 0;
+
+    @Setup
+    public void setup() {
+        BenchmarkScene.StubApplication app = new BenchmarkScene.StubApplication(BenchmarkScene.assetManager());
+        cam = app.getCamera();
+        basePosition.set(position.equals("near") ? new Vector3f(2, 1, -7) : new Vector3f(-20, 5, 20));
+        cam.setLocation(basePosition);
+
+        // Sound plays its first station when it's made, there's no sound card here.
+        // every renderer call does nothing, the volume math in between is Sound's own
+        AudioRenderer silent = (AudioRenderer) Proxy.newProxyInstance(AudioRenderer.class.getClassLoader(),
+                new Class<?>[]{AudioRenderer.class}, (proxy, method, args) -> {
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class) return false;
+                    if (type == float.class) return 0f;
+                    if (type.isPrimitive() && type != void.class) return 0;
+                    return null;
+                });
+        AudioContext.setAudioRenderer(silent);
+
+        triggers = new ProximityTriggers(cam, 8f);
+        doorExit = new DoorExit(app, new Node("Gui Node"), triggers, new Vector3f(2, 0, -8));
+        sound = new Sound(app, new Node("Root Node"), new Node("Gui Node"),
+                new AudioCache(app.getAssetManager(), silent), triggers);
+
+        ProximityTriggers.ZoneListener noop = new ProximityTriggers.ZoneListener() {
+            @Override
+            public void onEnter(ProximityTriggers.Zone zone) {}
+
+            @Override
+            public void onExit(ProximityTriggers.Zone zone) {}
+        };
+        Random random = new Random(42);
+        for (int i = 0; i < extraZones; i++) {
+            Vector3f center = new Vector3f(100 + random.nextFloat() * 400, random.nextFloat() * 10, random.nextFloat() * 400);
+            triggers.addZone(center, 1f + random.nextFloat() * 4f, noop);
+        }
+    }
+
+    @Benchmark
+    public boolean triggersUpdate() {
+        // the player is always moving a little, otherwise the grid skips the frame entirely
+        cam.setLocation(moved.set(basePosition).addLocal((frame++ & 1) * 0.01f, 0, 0));
+        triggers.update(1f / 60f);
+        return doorExit.exitedDoor;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mygame;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.util.CollisionShapeFactory;
+import com.jme3.scene.Node;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * the load time passes over the office scene.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneTraversalBenchmark {
+
+    private Node scene;
+
+    @Setup
+    public void setup() {
+        BenchmarkScene.loadBullet();
+        AssetManager assetManager = BenchmarkScene.assetManager();
+        scene = BenchmarkScene.loadScene(assetManager);
+    }
+
+    @Benchmark
+    public Node setNearestFilter() {
+        TextureUtils.setNearestFilter(scene);
+        return scene;
+    }
+
+    /**
+     * a copy of the office as it comes from the file for every call. process() takes the lights
+     * off and changes the materials, a second call on the same scene would skip half the work.
+     */
+    @State(Scope.Thread)
+    public static class FreshScene {
+        private Node loaded;
+        Node scene;
+
+        @Setup
+        public void load() {
+            loaded = BenchmarkScene.loadScene(BenchmarkScene.assetManager());
+        }
+
+        @Setup(Level.Invocation)
+        public void copy() {
+            scene = (Node) loaded.deepClone();
+        }
+    }
+
+    /**
+     * filters, transparency and lights in one traversal, what the game runs after loading.
+     */
+    @Benchmark
+    public Node preprocess(FreshScene fresh) {
+        new ScenePreprocessor(ForkJoinPool.commonPool()).process(fresh.scene);
+        return fresh.scene;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    public CollisionShape createMeshShape() {
+        return CollisionShapeFactory.createMeshShape(scene);
+    }
+}
@@ -0,0 +1,106 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import java.lang.management.ManagementFactory;
+
+/**
+ * headless allocation check (run with --allocation-check, gradle allocationCheck or check).
+ *
+ * drives the PlayerController the way a frame does: key and mouse events through its
+ * listeners, update(), a physics step and the camera follow, and counts the bytes the jME
+ * thread allocated while doing it (ThreadMXBean). after the warmup a frame has to allocate
+ * nothing, otherwise it prints the bytes per frame and exits with 1.
+ *
+ * this runs in update(), the physics thread only steps during render() so calling the tick
+ * methods from here doesn't race with it.
+ */
+public class AllocationCheck extends BaseAppState {
+
+    // enough for the JIT to settle and every lazily created temporary to exist
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int FRAMES = 10_000;
+    private static final float TPF = 1f / 144f;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private long threadId;
+    private PlayerController player;
+    private PhysicsSpace space;
+
+    @Override
+    protected void initialize(Application app) {
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadId = Thread.currentThread().getId();
+    }
+
+    @Override
+    protected void cleanup(Application app) {}
+
+    @Override
+    protected void onEnable() {}
+
+    @Override
+    protected void onDisable() {}
+
+    @Override
+    public void update(float tpf) {
+        // the scene is loaded in the background, wait for the player
+        if (!((Main) getApplication()).isSceneReady()) {
+            return;
+        }
+        player = getApplication().getStateManager().getState(PlayerController.class);
+        if (player == null || !player.isInitialized()) {
+            return;
+        }
+        space = getApplication().getStateManager().getState(BulletAppState.class).getPhysicsSpace();
+        // the mouse listener ignores everything while the cursor is visible
+        getApplication().getInputManager().setCursorVisible(false);
+
+        System.out.println("ALLOCATION: " + WARMUP_FRAMES + " warmup frames, " + FRAMES + " measured frames");
+        runFrames(WARMUP_FRAMES);
+
+        // what reading the counter costs by itself
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        long empty = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        runFrames(FRAMES);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before - empty;
+
+        player.setInput(false, false, false, false);
+        setEnabled(false);
+        System.out.printf("ALLOCATION: %d bytes in %d frames (%.2f bytes per frame)%n",
+                allocated, FRAMES, (double) allocated / FRAMES);
+        if (allocated > 0) {
+            System.err.println("ALLOCATION: FAILED, player movement allocates every frame again");
+            System.exit(1);
+        }
+        System.out.println("ALLOCATION: passed");
+        getApplication().stop();
+    }
+
+    /**
+     * what the PlayerController sees in a frame: walking in a circle while looking around.
+     */
+    private void runFrames(int count) {
+        for (int i = 0; i < count; i++) {
+            int part = (i / 30) % 4;
+            player.actionListener.onAction("Up", part != 2, TPF);
+            player.actionListener.onAction("Down", part == 2, TPF);
+            player.actionListener.onAction("Left", part == 1, TPF);
+            player.actionListener.onAction("Right", part == 3, TPF);
+            player.analogListener.onAnalog(part < 2 ? "RotateLeft" : "RotateRight", 0.01f, TPF);
+            player.analogListener.onAnalog(part % 2 == 0 ? "LookUp" : "LookDown", 0.005f, TPF);
+
+            player.update(TPF);
+            // about one physics step every other frame at 144 fps
+            if (i % 2 == 0) {
+                player.prePhysicsTick(space, Main.PHYSICS_STEP);
+                player.physicsTick(space, Main.PHYSICS_STEP);
+            }
+            player.follow.update(TPF);
+        }
+    }
+}
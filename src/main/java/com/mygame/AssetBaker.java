@@ -0,0 +1,292 @@
+package com.mygame;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.ModelKey;
+import com.jme3.asset.TextureKey;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.light.Light;
+import com.jme3.material.MatParam;
+import com.jme3.material.MatParamTexture;
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.material.TechniqueDef;
+import com.jme3.scene.AssetLinkNode;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.plugins.ktx.KTXLoader;
+import com.jme3.texture.plugins.ktx.KTXWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import jme3tools.converters.MipMapGenerator;
+
+/**
+ * offline asset baking, run with: gradle :assets:bakeAssets (processResources runs it too).
+ *
+ * - every GLB / glTF under Models and every scene under Scenes is written as a binary j3o
+ *   under Baked/ with the same path. linked models (AssetLinkNode) are put inline, the
+ *   pixel art filters are set on every texture and the props get their LOD levels, so the
+ *   game doesn't have to do any of that after loading.
+ * - the small textures of all models (palettes, the ones embedded in the props) are packed
+ *   into one shared atlas, see AtlasPacker.
+ * - the textures those models use are written as KTX with all mip levels already in them.
+ * - every j3md under MatDefs is loaded and the shader files (with their imports) are read,
+ *   so a typo fails the build instead of the first frame. compiling the GLSL needs a GL
+ *   context, that still happens at runtime.
+ *
+ * the game calls resolve() for the paths it loads and falls back to the source files when
+ * nothing was baked (e.g. running straight from the IDE).
+ */
+public class AssetBaker {
+
+    public static final String BAKED_DIR = "Baked/";
+    private static final int ATLAS_SIZE = 2048;
+
+    private final AssetManager assetManager;
+    private final File assetsDir;
+    private final File outDir;
+
+    // source texture path -> baked texture path, every texture is written once
+    private final Map<String, String> bakedTextures = new HashMap<>();
+    private final List<String> errors = new ArrayList<>();
+
+    public AssetBaker(File assetsDir, File outDir) {
+        this.assetsDir = assetsDir;
+        this.outDir = outDir;
+        assetManager = new DesktopAssetManager(true);
+        assetManager.registerLocator(assetsDir.getAbsolutePath(), FileLocator.class);
+        assetManager.registerLoader(KTXLoader.class, "ktx");
+    }
+
+    /**
+     * args: the assets folder and where the baked files go (normally assets/Baked).
+     */
+    public static void main(String[] args) throws IOException {
+        File assetsDir = new File(args.length > 0 ? args[0] : "assets");
+        File outDir = new File(args.length > 1 ? args[1] : new File(assetsDir, BAKED_DIR).getPath());
+        AssetBaker baker = new AssetBaker(assetsDir, outDir);
+
+        long start = System.nanoTime();
+        baker.validateMaterials();
+        baker.bakeModels();
+        System.out.printf("Assets baked in %.1f s%n", (System.nanoTime() - start) / 1e9);
+
+        if (!baker.errors.isEmpty()) {
+            System.err.println(baker.errors.size() + " asset(s) failed:");
+            baker.errors.forEach(e -> System.err.println("  " + e));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * the baked version of an asset if it's there, otherwise the source path.
+     * e.g. Models/radioModel.glb -> Baked/Models/radioModel.j3o
+     */
+    public static String resolve(AssetManager assetManager, String sourcePath) {
+        String baked = bakedPath(sourcePath);
+        if (assetManager.locateAsset(new AssetKey<>(baked)) != null) {
+            return baked;
+        }
+        return sourcePath;
+    }
+
+    public static boolean isBaked(String path) {
+        return path.startsWith(BAKED_DIR);
+    }
+
+    static String bakedPath(String sourcePath) {
+        int dot = sourcePath.lastIndexOf('.');
+        return BAKED_DIR + (dot > 0 ? sourcePath.substring(0, dot) : sourcePath) + ".j3o";
+    }
+
+    private void validateMaterials() throws IOException {
+        for (String path : list("MatDefs", ".j3md")) {
+            try {
+                MaterialDef def = (MaterialDef) assetManager.loadAsset(new AssetKey<>(path));
+                int shaders = 0;
+                for (String technique : def.getTechniqueDefsNames()) {
+                    for (TechniqueDef techniqueDef : def.getTechniqueDefs(technique)) {
+                        for (String shader : techniqueDef.getShaderProgramNames().values()) {
+                            // the GLSL loader resolves the #imports, a missing one throws here
+                            assetManager.loadAsset(new AssetKey<>(shader));
+                            shaders++;
+                        }
+                    }
+                }
+                System.out.println("Validated " + path + " (" + shaders + " shaders)");
+            } catch (RuntimeException e) {
+                errors.add(path + ": " + e);
+            }
+        }
+    }
+
+    private void bakeModels() throws IOException {
+        List<String> paths = new ArrayList<>();
+        paths.addAll(list("Models", ".glb"));
+        paths.addAll(list("Models", ".gltf"));
+        paths.addAll(list("Scenes", ".j3o"));
+
+        // everything is loaded first, the atlas is shared between all of them
+        Map<String, Spatial> models = new LinkedHashMap<>();
+        for (String path : paths) {
+            try {
+                models.put(path, loadModel(path));
+            } catch (RuntimeException e) {
+                errors.add(path + ": " + e);
+            }
+        }
+
+        AtlasPacker atlas = new AtlasPacker("props", ATLAS_SIZE);
+        for (Spatial model : models.values()) {
+            atlas.add(model);
+        }
+        atlas.pack();
+
+        for (Map.Entry<String, Spatial> entry : models.entrySet()) {
+            try {
+                bakeModel(entry.getKey(), entry.getValue());
+            } catch (IOException | RuntimeException e) {
+                errors.add(entry.getKey() + ": " + e);
+            }
+        }
+    }
+
+    private Spatial loadModel(String path) {
+        // no cache, every model gets its own textures and materials to change
+        assetManager.clearCache();
+        Spatial model = inlineLinks(assetManager.loadModel(new ModelKey(path)));
+        TextureUtils.setNearestFilter(model);
+        return model;
+    }
+
+    private void bakeModel(String path, Spatial model) throws IOException {
+        long start = System.nanoTime();
+        bakeTextures(model);
+        // props only, the office is merged at runtime and doesn't need LODs
+        if (path.startsWith("Models/") && !path.contains("Office")) {
+            LodBaker.bakeLods(model);
+        }
+
+        File file = new File(outDir, bakedPath(path).substring(BAKED_DIR.length()));
+        file.getParentFile().mkdirs();
+        BinaryExporter.getInstance().save(model, file);
+        System.out.printf("Baked %s -> %s (%.1f ms)%n", path, file, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * a j3o scene only stores the path of linked models, the baked one has them inline so
+     * there's nothing left to parse at runtime.
+     */
+    private static Spatial inlineLinks(Spatial spatial) {
+        if (!(spatial instanceof Node)) {
+            return spatial;
+        }
+        Node node = (Node) spatial;
+        Node result = node;
+        if (node instanceof AssetLinkNode) {
+            result = new Node(node.getName());
+            result.setLocalTransform(node.getLocalTransform());
+            result.setShadowMode(node.getLocalShadowMode());
+            result.setCullHint(node.getLocalCullHint());
+            for (Light light : node.getLocalLightList()) {
+                result.addLight(light);
+            }
+            for (String key : node.getUserDataKeys()) {
+                result.setUserData(key, node.getUserData(key));
+            }
+        }
+        for (Spatial child : new ArrayList<>(node.getChildren())) {
+            Spatial baked = inlineLinks(child);
+            if (baked != child || result != node) {
+                child.removeFromParent();
+                result.attachChild(baked);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * textures loaded from a file are written as KTX with mip maps and the material points
+     * at that. textures embedded in a GLB have no file, they get their mip maps in place and
+     * end up inside the j3o.
+     */
+    private void bakeTextures(Spatial model) {
+        model.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                Material mat = geom.getMaterial();
+                if (mat == null) {
+                    return;
+                }
+                for (MatParam param : mat.getParams()) {
+                    if (!(param instanceof MatParamTexture)) {
+                        continue;
+                    }
+                    Texture tex = ((MatParamTexture) param).getTextureValue();
+                    if (tex == null || tex.getImage() == null) {
+                        continue;
+                    }
+                    Image image = tex.getImage();
+                    if (!image.hasMipmaps()) {
+                        MipMapGenerator.generateMipMaps(image);
+                    }
+                    // crisp up close like before, but no shimmering far away
+                    tex.setMagFilter(Texture.MagFilter.Nearest);
+                    tex.setMinFilter(Texture.MinFilter.NearestNearestMipMap);
+
+                    if (tex.getKey() instanceof TextureKey) {
+                        TextureKey source = (TextureKey) tex.getKey();
+                        TextureKey baked = new TextureKey(bakeTexture(source.getName(), image), false);
+                        baked.setGenerateMips(false);
+                        baked.setTextureTypeHint(source.getTextureTypeHint());
+                        tex.setKey(baked);
+                    }
+                }
+            }
+        });
+    }
+
+    private String bakeTexture(String sourcePath, Image image) {
+        return bakedTextures.computeIfAbsent(sourcePath, path -> {
+            String bakedPath = BAKED_DIR + path.substring(0, path.lastIndexOf('.')) + ".ktx";
+            File file = new File(outDir, bakedPath.substring(BAKED_DIR.length()));
+            file.getParentFile().mkdirs();
+            new KTXWriter(file.getParent()).write(image, file.getName());
+            System.out.println("Baked " + path + " -> " + file);
+            return bakedPath;
+        });
+    }
+
+    /**
+     * asset paths (with / and relative to the assets folder) of the files in dir, Baked/ excluded.
+     */
+    private List<String> list(String dir, String extension) throws IOException {
+        Path root = assetsDir.toPath();
+        Path start = root.resolve(dir);
+        if (!Files.isDirectory(start)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(start)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(extension))
+                    .map(p -> root.relativize(p).toString().replace(File.separatorChar, '/'))
+                    .filter(p -> !isBaked(p))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * loads the startup assets in parallel on a small worker pool instead of one after the other
+ * on the render thread, so the first frame waits for the slowest asset, not all of them.
+ *
+ * the AssetManager is fine to use from several threads. the results are kept here until
+ * the game is done with them, that keeps them in the AssetManager cache too, so a later
+ * loadModel() for the same path is just a cheap clone instead of another load.
+ * nothing is attached to the scene from the workers, onComplete runs on the render thread.
+ */
+public class AssetPreloader {
+
+    public interface ProgressListener {
+        /** called from a worker thread after every finished asset */
+        void onProgress(int done, int total, String asset);
+    }
+
+    private final Application app;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Callable<?>> tasks = new ArrayList<>();
+    private final Map<String, Object> results = new ConcurrentHashMap<>();
+    private final AtomicInteger done = new AtomicInteger();
+    private ExecutorService pool;
+    private long startNanos;
+
+    public AssetPreloader(Application app) {
+        this.app = app;
+    }
+
+    /**
+     * anything that can be done off the render thread, the result is stored under the name.
+     */
+    public void add(String name, Callable<?> task) {
+        if (pool != null) {
+            throw new IllegalStateException("the preloader is already running");
+        }
+        names.add(name);
+        tasks.add(task);
+    }
+
+    /**
+     * starts every task. the listener is called from the workers, onComplete is enqueued
+     * on the render thread once everything is done (failed assets included, they're just missing).
+     */
+    public void start(ProgressListener listener, Runnable onComplete) {
+        int total = tasks.size();
+        int threads = Math.max(1, Math.min(total, Runtime.getRuntime().availableProcessors() - 1));
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "asset-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        startNanos = System.nanoTime();
+        System.out.println("Loading " + total + " assets on " + threads + " threads");
+
+        if (total == 0) {
+            app.enqueue(onComplete);
+            return;
+        }
+        for (int i = 0; i < total; i++) {
+            String name = names.get(i);
+            Callable<?> task = tasks.get(i);
+            pool.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    Object result = task.call();
+                    if (result != null) {
+                        results.put(name, result);
+                    }
+                    System.out.printf("Loaded %s in %.1f ms%n", name, (System.nanoTime() - start) / 1e6);
+                } catch (Exception e) {
+                    System.err.println("Failed to load " + name);
+                    e.printStackTrace();
+                }
+
+                int finished = done.incrementAndGet();
+                if (listener != null) {
+                    listener.onProgress(finished, total, name);
+                }
+                if (finished == total) {
+                    System.out.printf("All assets loaded in %.1f ms%n", (System.nanoTime() - startNanos) / 1e6);
+                    pool.shutdown();
+                    app.enqueue(onComplete);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the loaded asset, or null if it failed or was never added
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name) {
+        return (T) results.get(name);
+    }
+
+    /**
+     * drops the references once everything is in the scene. assets that nothing else uses
+     * anymore can fall out of the cache after this.
+     */
+    public void release() {
+        results.clear();
+    }
+}
@@ -0,0 +1,341 @@
+package com.mygame;
+
+import com.jme3.asset.TextureKey;
+import com.jme3.material.MatParamTexture;
+import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Vector2f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.texture.image.ImageRaster;
+import com.jme3.util.BufferUtils;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import jme3tools.optimize.TextureAtlas;
+
+/**
+ * packs the small textures of several models (the palette textures of the office, the ones
+ * embedded in the props) into one atlas per map, used by the AssetBaker.
+ *
+ * the texture coordinates are moved into the geometry's tile and the materials point at the
+ * atlas. after that most materials only differ in their plain values or not at all, so they
+ * bind the same textures and the SceneOptimizer can merge their geometries.
+ *
+ * geometries whose coordinates go outside 0..1 (repeating textures) or whose texture is too
+ * big stay as they are.
+ *
+ * every tile gets a GUTTER of its own edge pixels around it, and the atlas only gets the mip
+ * levels that gutter covers (MIP_LEVELS): a texel of a lower level would average pixels of
+ * the neighbouring tiles or the empty (transparent) space between them. the empty space is
+ * also why the opacity of each tile is written on its geometries (OPAQUE_KEY), checking the
+ * atlas image would make every material in it look see-through.
+ */
+public class AtlasPacker {
+
+    // the tile position comes from this one, the other maps go to the same spot
+    private static final String MASTER_MAP = "BaseColorMap";
+    private static final String[] SECONDARY_MAPS = {"EmissiveMap", "MetallicRoughnessMap", "NormalMap"};
+    // bigger textures aren't "small", they'd fill the atlas by themselves
+    private static final int MAX_TILE_SIZE = 512;
+    // a bit of float noise from the exporter is fine
+    private static final float UV_EPSILON = 0.001f;
+    // edge pixels repeated around every tile
+    private static final int GUTTER = 8;
+    // level n averages 2^n pixels, up to the gutter width is safe (1, 2, 4, 8)
+    private static final int MIP_LEVELS = 4;
+
+    /**
+     * geometry user data: true if the color texture of its tile has no transparent pixels,
+     * read by the ScenePreprocessor.
+     */
+    public static final String OPAQUE_KEY = "AtlasOpaque";
+
+    private final int size;
+    private final String name;
+    private final List<Geometry> candidates = new ArrayList<>();
+    // textures without a file, named by identity (GLBs reuse names like image0.png)
+    private final Map<Texture, String> embedded = new IdentityHashMap<>();
+    // how many geometries use each mesh, packed or not
+    private final Map<Mesh, Integer> meshUsers = new IdentityHashMap<>();
+    private final Map<Material, Integer> materialUsers = new IdentityHashMap<>();
+
+    /**
+     * @param name used for the atlas texture paths, Textures/Atlas/name_MapName
+     */
+    public AtlasPacker(String name, int size) {
+        this.name = name;
+        this.size = size;
+    }
+
+    /**
+     * collects the geometries of the model that can go into the atlas.
+     */
+    public void add(Spatial model) {
+        model.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                meshUsers.merge(geom.getMesh(), 1, Integer::sum);
+                if (geom.getMaterial() != null) {
+                    materialUsers.merge(geom.getMaterial(), 1, Integer::sum);
+                }
+                if (fits(geom)) {
+                    candidates.add(geom);
+                }
+            }
+        });
+    }
+
+    /**
+     * builds the atlas and rewrites texture coordinates and materials.
+     * @return how many geometries were moved into the atlas
+     */
+    public int pack() {
+        TextureAtlas atlas = new TextureAtlas(size, size);
+        List<Geometry> packed = new ArrayList<>();
+        // the textures each packed geometry had, the materials get rewritten below
+        Map<Geometry, Texture> masters = new IdentityHashMap<>();
+        for (Geometry geom : candidates) {
+            Material mat = geom.getMaterial();
+            Texture master = texture(mat, MASTER_MAP);
+            try {
+                if (!atlas.addTexture(padded(master), MASTER_MAP)) {
+                    System.err.println("AtlasPacker: atlas full, " + geom.getName() + " keeps its own textures");
+                    continue;
+                }
+                for (String map : SECONDARY_MAPS) {
+                    Texture tex = texture(mat, map);
+                    if (tex != null) {
+                        atlas.addTexture(padded(tex), map, master);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // e.g. an image format the atlas can't copy
+                System.err.println("AtlasPacker: skipping " + geom.getName() + ": " + e);
+                continue;
+            }
+            packed.add(geom);
+            masters.put(geom, master);
+        }
+
+        // meshes can be shared. one that only this geometry uses is changed in place, a shared
+        // one is copied once per atlas tile, so its other users keep their coordinates
+        Map<Mesh, Map<Texture, Mesh>> moved = new IdentityHashMap<>();
+        // same for materials: one that a geometry outside the atlas uses is copied
+        Map<Material, Integer> packedMaterialUsers = new IdentityHashMap<>();
+        for (Geometry geom : packed) {
+            packedMaterialUsers.merge(geom.getMaterial(), 1, Integer::sum);
+        }
+        Map<Material, Material> rewritten = new IdentityHashMap<>();
+        // looked at before the material points at the atlas
+        Map<Material, Boolean> opaque = new IdentityHashMap<>();
+        for (Geometry geom : packed) {
+            Material original = geom.getMaterial();
+            Texture master = masters.get(geom);
+            Mesh originalMesh = geom.getMesh();
+            Map<Texture, Mesh> byTile = moved.computeIfAbsent(originalMesh, m -> new IdentityHashMap<>());
+            Mesh mesh = byTile.get(master);
+            if (mesh == null) {
+                mesh = meshUsers.get(originalMesh) == 1 ? originalMesh : originalMesh.deepClone();
+                moveIntoTile(mesh, atlas.getAtlasTile(master), master.getImage());
+                byTile.put(master, mesh);
+            }
+            geom.setMesh(mesh);
+            geom.setUserData(OPAQUE_KEY, opaque.computeIfAbsent(original, ScenePreprocessor::texturesOpaque));
+
+            Material mat = rewritten.get(original);
+            if (mat == null) {
+                boolean shared = !materialUsers.get(original).equals(packedMaterialUsers.get(original));
+                mat = shared ? original.clone() : original;
+                mat.setTexture(MASTER_MAP, atlasTexture(atlas, MASTER_MAP, master));
+                for (String map : SECONDARY_MAPS) {
+                    Texture old = texture(original, map);
+                    if (old != null) {
+                        mat.setTexture(map, atlasTexture(atlas, map, old));
+                    }
+                }
+                rewritten.put(original, mat);
+            }
+            geom.setMaterial(mat);
+        }
+        System.out.println("AtlasPacker: " + packed.size() + " of " + candidates.size()
+                + " geometries moved into the " + name + " atlas (" + rewritten.size() + " materials)");
+        return packed.size();
+    }
+
+    /**
+     * 0..1 texture coordinates to the inside of the tile, the gutter around it stays unused.
+     */
+    private static void moveIntoTile(Mesh mesh, TextureAtlas.TextureAtlasTile tile, Image source) {
+        // where the padded tile is in the atlas, in texture coordinates
+        Vector2f start = tile.getLocation(new Vector2f(0, 0));
+        Vector2f end = tile.getLocation(new Vector2f(1, 1));
+        int width = source.getWidth();
+        int height = source.getHeight();
+        float scaleX = (end.x - start.x) / (width + 2 * GUTTER);
+        float scaleY = (end.y - start.y) / (height + 2 * GUTTER);
+
+        FloatBuffer coords = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.TexCoord).getData();
+        for (int i = 0; i + 1 < coords.limit(); i += 2) {
+            float u = start.x + (GUTTER + coords.get(i) * width) * scaleX;
+            float v = start.y + (GUTTER + coords.get(i + 1) * height) * scaleY;
+            coords.put(i, u).put(i + 1, v);
+        }
+        mesh.getBuffer(VertexBuffer.Type.TexCoord).updateData(coords);
+    }
+
+    /**
+     * a copy of the texture with GUTTER pixels around it that repeat its edges. keeps the key
+     * and name, the atlas finds the tile by those.
+     */
+    private static Texture padded(Texture tex) {
+        Image source = tex.getImage();
+        int width = source.getWidth() + 2 * GUTTER;
+        int height = source.getHeight() + 2 * GUTTER;
+        Image image = new Image(Image.Format.RGBA8, width, height,
+                BufferUtils.createByteBuffer(width * height * 4), source.getColorSpace());
+        ImageRaster from = ImageRaster.create(source);
+        ImageRaster to = ImageRaster.create(image);
+        ColorRGBA color = new ColorRGBA();
+        for (int y = 0; y < height; y++) {
+            int sourceY = Math.max(0, Math.min(source.getHeight() - 1, y - GUTTER));
+            for (int x = 0; x < width; x++) {
+                int sourceX = Math.max(0, Math.min(source.getWidth() - 1, x - GUTTER));
+                to.setPixel(x, y, from.getPixel(sourceX, sourceY, color));
+            }
+        }
+        Texture2D copy = new Texture2D(image);
+        copy.setKey(tex.getKey());
+        copy.setName(tex.getName());
+        return copy;
+    }
+
+    /**
+     * the first MIP_LEVELS levels of the atlas, 2x2 box filter. the atlas is ABGR8, any other
+     * format is left to the baker.
+     */
+    private static void generateMipMaps(Image image) {
+        Image.Format format = image.getFormat();
+        if ((format != Image.Format.ABGR8 && format != Image.Format.RGBA8) || image.hasMipmaps()) {
+            return;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        List<byte[]> levels = new ArrayList<>();
+        byte[] level = new byte[width * height * 4];
+        ByteBuffer data = image.getData(0).duplicate();
+        data.position(0);
+        data.get(level);
+        levels.add(level);
+        for (int n = 1; n < MIP_LEVELS && width > 1 && height > 1; n++) {
+            int w = width / 2;
+            int h = height / 2;
+            byte[] next = new byte[w * h * 4];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    int a = ((2 * y) * width + 2 * x) * 4;
+                    int b = ((2 * y + 1) * width + 2 * x) * 4;
+                    for (int c = 0; c < 4; c++) {
+                        int sum = (level[a + c] & 0xFF) + (level[a + 4 + c] & 0xFF)
+                                + (level[b + c] & 0xFF) + (level[b + 4 + c] & 0xFF);
+                        next[(y * w + x) * 4 + c] = (byte) ((sum + 2) / 4);
+                    }
+                }
+            }
+            levels.add(next);
+            level = next;
+            width = w;
+            height = h;
+        }
+
+        int[] sizes = new int[levels.size()];
+        int total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = levels.get(i).length;
+            total += sizes[i];
+        }
+        ByteBuffer mipped = BufferUtils.createByteBuffer(total);
+        for (byte[] bytes : levels) {
+            mipped.put(bytes);
+        }
+        mipped.flip();
+        image.setData(0, mipped);
+        image.setMipMapSizes(sizes);
+    }
+
+    /**
+     * the atlas texture for a map, with the filters of the texture it replaces. the key gives it
+     * a path so the baker writes it once as KTX instead of inline in every model.
+     */
+    private Texture atlasTexture(TextureAtlas atlas, String map, Texture replaced) {
+        Texture tex = atlas.getAtlasTexture(map);
+        if (tex.getKey() == null) {
+            tex.setKey(new TextureKey("Textures/Atlas/" + name + "_" + map + ".png", false));
+            tex.setWrap(Texture.WrapMode.EdgeClamp);
+            // the baker keeps these instead of making a full chain
+            generateMipMaps(tex.getImage());
+        }
+        tex.setMagFilter(replaced.getMagFilter());
+        tex.setMinFilter(replaced.getMinFilter());
+        return tex;
+    }
+
+    private boolean fits(Geometry geom) {
+        Material mat = geom.getMaterial();
+        Mesh mesh = geom.getMesh();
+        if (mat == null || mesh == null) {
+            return false;
+        }
+        Texture master = texture(mat, MASTER_MAP);
+        if (master == null || !small(master)) {
+            return false;
+        }
+        for (String map : SECONDARY_MAPS) {
+            Texture tex = texture(mat, map);
+            if (tex != null && !small(tex)) {
+                return false;
+            }
+        }
+        VertexBuffer vb = mesh.getBuffer(VertexBuffer.Type.TexCoord);
+        if (vb == null || vb.getNumComponents() != 2 || !(vb.getData() instanceof FloatBuffer)) {
+            return false;
+        }
+        FloatBuffer coords = (FloatBuffer) vb.getData();
+        for (int i = 0; i < coords.limit(); i++) {
+            float v = coords.get(i);
+            if (v < -UV_EPSILON || v > 1 + UV_EPSILON) {
+                return false;
+            }
+        }
+        // the atlas finds tiles by name, embedded textures need a unique one
+        nameTexture(master);
+        for (String map : SECONDARY_MAPS) {
+            nameTexture(texture(mat, map));
+        }
+        return true;
+    }
+
+    private void nameTexture(Texture tex) {
+        if (tex != null && tex.getKey() == null) {
+            tex.setName(embedded.computeIfAbsent(tex, t -> name + "-embedded-" + embedded.size()));
+        }
+    }
+
+    private static boolean small(Texture tex) {
+        return tex.getImage() != null && tex.getImage().getWidth() <= MAX_TILE_SIZE
+                && tex.getImage().getHeight() <= MAX_TILE_SIZE;
+    }
+
+    private static Texture texture(Material mat, String map) {
+        return mat.getParam(map) instanceof MatParamTexture ? ((MatParamTexture) mat.getParam(map)).getTextureValue() : null;
+    }
+}
@@ -0,0 +1,165 @@
+package com.mygame;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetManager;
+import com.jme3.audio.AudioBuffer;
+import com.jme3.audio.AudioData;
+import com.jme3.audio.AudioData.DataType;
+import com.jme3.audio.AudioKey;
+import com.jme3.audio.AudioNode;
+import com.jme3.audio.AudioRenderer;
+import com.jme3.scene.Node;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * one place for every sound the game loads.
+ *
+ * short clips are decoded once and the same AudioData is shared by every AudioNode that plays
+ * them (Sound, HelloAudio, the ambient nodes in the scene). long tracks like the radio stations
+ * are streamed instead, so only a few small buffers of them are in memory at a time and not the
+ * whole decoded file. a stream can't be shared, every streamed node gets its own.
+ */
+public class AudioCache {
+
+    // anything bigger than this on disk gets streamed
+    private static final long STREAM_THRESHOLD_BYTES = 1024 * 1024;
+    // a playing stream keeps a handful of OpenAL buffers filled, this is a rough estimate of them
+    private static final long STREAM_RESIDENT_BYTES = 5 * 35280;
+
+    private final AssetManager assetManager;
+    private final AudioRenderer audioRenderer;
+
+    private final Map<String, AudioData> buffers = new ConcurrentHashMap<>();
+    private final Set<AudioNode> streams = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Map<String, Boolean> isLong = new ConcurrentHashMap<>();
+
+    public AudioCache(AssetManager assetManager, AudioRenderer audioRenderer) {
+        this.assetManager = assetManager;
+        this.audioRenderer = audioRenderer;
+    }
+
+    /**
+     * decoded data for a short clip, loaded the first time it's asked for.
+     * safe to call from the asset loader threads.
+     */
+    public AudioData getBuffer(String path) {
+        return buffers.computeIfAbsent(path, p -> assetManager.loadAudio(new AudioKey(p, false)));
+    }
+
+    /**
+     * a new node for the sound, streamed if the file is long, shared buffer otherwise.
+     * the node isn't attached anywhere.
+     */
+    public AudioNode createNode(String path) {
+        return createNode(path, isLongTrack(path) ? DataType.Stream : DataType.Buffer);
+    }
+
+    public AudioNode createNode(String path, DataType type) {
+        if (type == DataType.Stream) {
+            AudioNode node = new AudioNode(assetManager, path, DataType.Stream);
+            streams.add(node);
+            return node;
+        }
+        return new AudioNode(getBuffer(path), new AudioKey(path, false));
+    }
+
+    /**
+     * lets a node that came with the scene use the shared data. the data of a node can't be
+     * swapped once it's set, so if the clip is cached already the node is replaced by a copy
+     * that uses the cached data. returns the node that is in the scene afterwards.
+     * don't call this while traversing the node's parent.
+     */
+    public AudioNode adopt(AudioNode node) {
+        AudioKey key = node.getAudioKey();
+        AudioData data = node.getAudioData();
+        if (key == null || data == null || key.isStream()) {
+            return node;
+        }
+        AudioData cached = buffers.putIfAbsent(key.getName(), data);
+        if (cached == null || cached == data) {
+            return node;
+        }
+
+        AudioNode copy = new AudioNode(cached, key);
+        copy.setName(node.getName());
+        copy.setLocalTransform(node.getLocalTransform());
+        copy.setPositional(node.isPositional());
+        copy.setLooping(node.isLooping());
+        copy.setVolume(node.getVolume());
+        copy.setPitch(node.getPitch());
+        copy.setRefDistance(node.getRefDistance());
+        copy.setMaxDistance(node.getMaxDistance());
+        Node parent = node.getParent();
+        if (parent != null) {
+            int index = parent.getChildIndex(node);
+            node.removeFromParent();
+            parent.attachChildAt(copy, index);
+        }
+        if (audioRenderer != null) {
+            // only the node's source, the shared data stays
+            node.stop();
+        }
+        return copy;
+    }
+
+    /**
+     * stops a node created by createNode and frees what only it was using.
+     * shared buffers stay cached.
+     */
+    public void release(AudioNode node) {
+        node.removeFromParent();
+        boolean stream = streams.remove(node);
+        if (audioRenderer == null) {
+            return;
+        }
+        node.stop();
+        if (stream && node.getAudioData() != null) {
+            audioRenderer.deleteAudioData(node.getAudioData());
+        }
+    }
+
+    /**
+     * decoded sample bytes kept in memory, plus the estimate for the open streams.
+     */
+    public long getResidentBytes() {
+        long bytes = 0;
+        for (AudioData data : buffers.values()) {
+            if (data instanceof AudioBuffer && ((AudioBuffer) data).getData() != null) {
+                bytes += ((AudioBuffer) data).getData().capacity();
+            }
+        }
+        return bytes + streams.size() * STREAM_RESIDENT_BYTES;
+    }
+
+    public void printStats() {
+        System.out.printf("Audio: %d cached buffers, %d open streams, %.2f MB resident%n",
+                buffers.size(), streams.size(), getResidentBytes() / (1024.0 * 1024.0));
+    }
+
+    /**
+     * checks the size on disk without decoding anything, skip() on the asset stream is cheap.
+     */
+    private boolean isLongTrack(String path) {
+        return isLong.computeIfAbsent(path, p -> {
+            AssetInfo info = assetManager.locateAsset(new AudioKey(p));
+            if (info == null) {
+                return false;
+            }
+            try (InputStream in = info.openStream()) {
+                long skipped = 0;
+                long step;
+                while (skipped < STREAM_THRESHOLD_BYTES && (step = in.skip(STREAM_THRESHOLD_BYTES - skipped)) > 0) {
+                    skipped += step;
+                }
+                return skipped >= STREAM_THRESHOLD_BYTES;
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+}
@@ -0,0 +1,358 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * headless benchmark mode (run with --benchmark).
+ *
+ * flies the camera along a fixed path through the room and records CPU time per frame for:
+ * the whole frame, the update phase (app states + simpleUpdate), the physics step, the scene
+ * graph update (updateLogicalState + updateGeometricState) and the autofocus ray cast.
+ * allocated bytes are read from the ThreadMXBean so GC churn shows up too, and the triangles
+ * the LOD levels saved are counted every frame.
+ * results go to stdout and a JSON file, then the app quits.
+ *
+ * with --benchmark-retro the path is flown a second time with the retro render mode and
+ * its numbers go under "retro" in the same file. that's only the CPU side of the mode (the
+ * material swap, no shadow updates): headless there's no GL context, neither RetroShader nor
+ * the PBR shaders get compiled or drawn, so this can't tell which render path is faster.
+ *
+ * this has to be the first attached app state so its update() marks the start of the frame
+ * and its render() runs before bullet steps the physics.
+ */
+public class BenchmarkState extends BaseAppState implements PhysicsTickListener {
+
+    // camera path, eye height, looping
+    private static final Vector3f[] PATH = {
+        new Vector3f(0.1f, 5.3f, 1.1f),
+        new Vector3f(5f, 5.3f, -2f),
+        new Vector3f(2f, 5.3f, -7f),
+        new Vector3f(-3f, 5.3f, -4f),
+    };
+    private static final float SECONDS_PER_SEGMENT = 5f;
+    // the path is driven by frame number, not tpf, so every run sees the same camera positions
+    private static final float SCRIPT_TPF = 1f / 60f;
+
+    private final int warmupFrames;
+    private final int frames;
+    private final String outputPath;
+    private final boolean compareRetro;
+
+    private final long[] frameNanos;
+    private final long[] updateNanos;
+    private final long[] physicsNanos;
+    private final long[] sceneGraphNanos;
+    private final long[] pickNanos;
+    private final long[] allocatedBytes;
+    private final long[] trianglesSaved;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private long threadId;
+    private Camera cam;
+    private FocusPicker focusPicker;
+
+    private int frame = 0;
+    private long frameStart = 0;
+    private long updateDone = 0;
+    private long allocStart = 0;
+    private long physicsStart = 0;
+    private long physicsThisFrame = 0;
+    private long lastPickCount = 0;
+    private long measureStart = 0;
+    private long measureEnd = 0;
+    private int pickFrames = 0;
+
+    private final Vector3f camPos = new Vector3f();
+    private final Vector3f lookAt = new Vector3f();
+
+    // the PBR results while the retro run is going
+    private String pbrJson;
+
+    public BenchmarkState(int warmupFrames, int frames, String outputPath, boolean compareRetro) {
+        this.warmupFrames = warmupFrames;
+        this.frames = frames;
+        this.outputPath = outputPath;
+        this.compareRetro = compareRetro;
+        frameNanos = new long[frames];
+        updateNanos = new long[frames];
+        physicsNanos = new long[frames];
+        sceneGraphNanos = new long[frames];
+        pickNanos = new long[frames];
+        allocatedBytes = new long[frames];
+        trianglesSaved = new long[frames];
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadId = Thread.currentThread().getId();
+    }
+
+    /**
+     * the scene is loaded in the background, so this waits for the first frame where it's there.
+     */
+    private void start() {
+        Application app = getApplication();
+        cam = app.getCamera();
+        focusPicker = ((Main) app).getFocusPicker();
+
+        // the script drives the camera, not the player
+        PlayerController player = app.getStateManager().getState(PlayerController.class);
+        if (player != null) {
+            player.setEnabled(false);
+        }
+        PhysicsSpace space = app.getStateManager().getState(BulletAppState.class).getPhysicsSpace();
+        space.addTickListener(this);
+
+        System.out.println("BENCHMARK: " + warmupFrames + " warmup frames, " + frames + " measured frames");
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        app.getStateManager().getState(BulletAppState.class).getPhysicsSpace().removeTickListener(this);
+    }
+
+    @Override
+    protected void onEnable() {}
+
+    @Override
+    protected void onDisable() {}
+
+    @Override
+    public void update(float tpf) {
+        if (focusPicker == null) {
+            if (!((Main) getApplication()).isSceneReady()) {
+                return;
+            }
+            start();
+        }
+
+        long now = System.nanoTime();
+        long alloc = threadBean.getThreadAllocatedBytes(threadId);
+
+        // close the previous frame
+        int index = frame - warmupFrames - 1;
+        if (index >= 0 && index < frames) {
+            frameNanos[index] = now - frameStart;
+            allocatedBytes[index] = alloc - allocStart;
+            physicsNanos[index] = physicsThisFrame;
+            // the LodControls picked their levels while the last frame was rendered
+            trianglesSaved[index] = LodBaker.getTrianglesSaved(((Main) getApplication()).getRootNode());
+        }
+        if (frame == warmupFrames) {
+            measureStart = now;
+        }
+        if (index == frames - 1) {
+            measureEnd = now;
+            finish();
+            return;
+        }
+
+        frame++;
+        // taken again: the LOD count above walks the whole scene and isn't part of any frame
+        frameStart = System.nanoTime();
+        allocStart = threadBean.getThreadAllocatedBytes(threadId);
+        physicsThisFrame = 0;
+
+        moveCamera(frame * SCRIPT_TPF);
+    }
+
+    /**
+     * called by Main at the end of simpleUpdate.
+     */
+    public void markUpdateDone() {
+        if (focusPicker == null) {
+            return;
+        }
+        updateDone = System.nanoTime();
+        int index = frame - warmupFrames - 1;
+        if (index >= 0 && index < frames) {
+            updateNanos[index] = updateDone - frameStart;
+            long picks = focusPicker.getQueryCount();
+            if (picks != lastPickCount) {
+                pickNanos[index] = focusPicker.getLastQueryNanos();
+                pickFrames++;
+            } else {
+                pickNanos[index] = -1;
+            }
+            lastPickCount = picks;
+        }
+    }
+
+    @Override
+    public void render(RenderManager rm) {
+        if (focusPicker == null) {
+            return;
+        }
+        // rootNode / guiNode updateLogicalState + updateGeometricState ran between simpleUpdate and here
+        int index = frame - warmupFrames - 1;
+        if (index >= 0 && index < frames) {
+            sceneGraphNanos[index] = System.nanoTime() - updateDone;
+        }
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+        physicsStart = System.nanoTime();
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+        physicsThisFrame += System.nanoTime() - physicsStart;
+    }
+
+    private void moveCamera(float time) {
+        float segments = time / SECONDS_PER_SEGMENT;
+        int i = (int) segments % PATH.length;
+        float t = segments - (int) segments;
+        Vector3f from = PATH[i];
+        Vector3f to = PATH[(i + 1) % PATH.length];
+        camPos.set(from).interpolateLocal(to, t);
+        cam.setLocation(camPos);
+
+        // look ahead along the path while slowly panning around
+        float yaw = time * 0.6f;
+        lookAt.set(FastMath.sin(yaw), -0.1f, FastMath.cos(yaw)).addLocal(camPos);
+        cam.lookAt(lookAt, Vector3f.UNIT_Y);
+    }
+
+    private void finish() {
+        if (compareRetro && pbrJson == null) {
+            startRetroRun();
+            return;
+        }
+        String json = toJson();
+        if (pbrJson != null) {
+            // PBR stays at the top level like in the runs without the retro run. no ratio
+            // between the two, without a GPU it would only compare CPU time (see above)
+            json = pbrJson.substring(0, pbrJson.lastIndexOf('}')).replaceAll("\\s+$", "") + ",\n"
+                    + "  \"renderMode\": \"pbr\",\n"
+                    + "  \"retro\": " + json.replace("\n", "\n  ") + "\n}";
+        }
+        System.out.println(json);
+        try {
+            Path path = Paths.get(outputPath);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+            System.out.println("BENCHMARK: results written to " + path.toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("BENCHMARK: could not write " + outputPath);
+            e.printStackTrace();
+        }
+        setEnabled(false);
+        getApplication().stop();
+    }
+
+    /**
+     * keeps the PBR results, switches to the retro materials and flies the same path again
+     * (warmup included, the new materials are set up on the first frames).
+     */
+    private void startRetroRun() {
+        pbrJson = toJson();
+        System.out.println("BENCHMARK: PBR run done, starting the retro run");
+
+        ((Main) getApplication()).setRetroMode(true);
+        for (long[] samples : new long[][]{frameNanos, updateNanos, physicsNanos, sceneGraphNanos,
+                pickNanos, allocatedBytes, trianglesSaved}) {
+            Arrays.fill(samples, 0);
+        }
+        frame = 0;
+        pickFrames = 0;
+        measureStart = 0;
+        measureEnd = 0;
+        moveCamera(0);
+    }
+
+    private String toJson() {
+        double seconds = (measureEnd - measureStart) / 1e9;
+        long totalAlloc = 0;
+        int zeroAllocFrames = 0;
+        for (long bytes : allocatedBytes) {
+            totalAlloc += bytes;
+            if (bytes == 0) zeroAllocFrames++;
+        }
+        LightAssigner lights = ((Main) getApplication()).getLightAssigner();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"scene\": \"Scenes/OfficeScene.j3o\",\n");
+        sb.append("  \"warmupFrames\": ").append(warmupFrames).append(",\n");
+        sb.append("  \"frames\": ").append(frames).append(",\n");
+        sb.append("  \"seconds\": ").append(fmt(seconds)).append(",\n");
+        sb.append("  \"fps\": ").append(fmt(frames / seconds)).append(",\n");
+        sb.append("  \"frameMs\": ").append(stats(frameNanos)).append(",\n");
+        sb.append("  \"updateMs\": ").append(stats(updateNanos)).append(",\n");
+        sb.append("  \"physicsMs\": ").append(stats(physicsNanos)).append(",\n");
+        sb.append("  \"sceneGraphMs\": ").append(stats(sceneGraphNanos)).append(",\n");
+        sb.append("  \"collideWithMs\": ").append(stats(pickNanos)).append(",\n");
+        sb.append("  \"collideWithQueries\": ").append(pickFrames).append(",\n");
+        sb.append("  \"allocation\": {")
+                .append("\"bytesPerFrame\": ").append(fmt((double) totalAlloc / frames))
+                .append(", \"mbPerSecond\": ").append(fmt(totalAlloc / seconds / (1024 * 1024)))
+                .append(", \"zeroAllocationFrames\": ").append(zeroAllocFrames)
+                .append("},\n");
+        sb.append("  \"lightsPerGeometry\": {")
+                .append("\"before\": ").append(fmt(lights.getLightsPerGeometryBefore()))
+                .append(", \"after\": ").append(fmt(lights.getLightsPerGeometryAfter()))
+                .append("},\n");
+        sb.append("  \"lodTrianglesSavedPerFrame\": ").append(counts(trianglesSaved)).append("\n");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * p50/p95/p99/mean/max in milliseconds, negative samples (no data that frame) are skipped.
+     */
+    private static String stats(long[] samples) {
+        long[] sorted = Arrays.stream(samples).filter(v -> v >= 0).sorted().toArray();
+        if (sorted.length == 0) {
+            return "null";
+        }
+        double sum = 0;
+        for (long v : sorted) sum += v;
+        return "{\"p50\": " + fmt(percentile(sorted, 0.50) / 1e6)
+                + ", \"p95\": " + fmt(percentile(sorted, 0.95) / 1e6)
+                + ", \"p99\": " + fmt(percentile(sorted, 0.99) / 1e6)
+                + ", \"mean\": " + fmt(sum / sorted.length / 1e6)
+                + ", \"max\": " + fmt(sorted[sorted.length - 1] / 1e6) + "}";
+    }
+
+    /**
+     * p50/mean/max of plain per frame counts.
+     */
+    private static String counts(long[] samples) {
+        long[] sorted = Arrays.stream(samples).sorted().toArray();
+        double sum = 0;
+        for (long v : sorted) sum += v;
+        return "{\"p50\": " + fmt(percentile(sorted, 0.50))
+                + ", \"mean\": " + fmt(sum / sorted.length)
+                + ", \"max\": " + sorted[sorted.length - 1] + "}";
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static String fmt(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
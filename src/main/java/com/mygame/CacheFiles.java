@@ -0,0 +1,108 @@
+package com.mygame;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * the on-disk caches (collision shapes, LOD levels): where the files go, how they're named
+ * and the hashes they're keyed by.
+ *
+ * the asset folder ends up inside the jar, so everything goes to ~/.bunker/cache
+ * (or -Dbunker.cacheDir=...) instead of next to the assets. files are named
+ * [asset name].[hash].[suffix], e.g. OfficeScene.1a2b3c4d5e6f7a8b.mesh.shape.j3o, so a changed
+ * asset simply has no file yet and the old one is deleted when the new one is written.
+ */
+public class CacheFiles {
+
+    private final File dir;
+
+    public CacheFiles() {
+        String path = System.getProperty("bunker.cacheDir",
+                System.getProperty("user.home") + File.separator + ".bunker" + File.separator + "cache");
+        this.dir = new File(path);
+    }
+
+    /**
+     * @param suffix what kind of cache it is, e.g. "lod.j3o"
+     */
+    public File file(String assetPath, String hash, String suffix) {
+        return new File(dir, baseName(assetPath) + "." + hash + "." + suffix);
+    }
+
+    /**
+     * creates the cache folder and deletes the older files of the asset with the same suffix,
+     * call it right before writing the new one.
+     */
+    public void prepare(String assetPath, String suffix) {
+        dir.mkdirs();
+        String prefix = baseName(assetPath) + ".";
+        String end = "." + suffix;
+        File[] stale = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(end));
+        if (stale != null) {
+            for (File f : stale) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * a SHA-256 digest that already has the format version in it. bump the version when what's
+     * written changes, so old files aren't picked up.
+     */
+    public static MessageDigest digest(int formatVersion) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((byte) formatVersion);
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has to have SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * the first 8 bytes of the digest as hex, plenty for telling versions of a file apart.
+     */
+    public static String hex(MessageDigest digest) {
+        StringBuilder sb = new StringBuilder();
+        byte[] hash = digest.digest();
+        for (int i = 0; i < 8; i++) {
+            sb.append(String.format("%02x", hash[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * hash of the asset file's bytes, null if it can't be found or read.
+     */
+    public static String fileHash(AssetManager assetManager, String assetPath, int formatVersion) {
+        AssetInfo info = assetManager.locateAsset(new AssetKey<>(assetPath));
+        if (info == null) {
+            return null;
+        }
+        try (InputStream in = info.openStream()) {
+            MessageDigest digest = digest(formatVersion);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return hex(digest);
+        } catch (IOException e) {
+            System.err.println("Could not hash " + assetPath + ": " + e);
+            return null;
+        }
+    }
+
+    static String baseName(String assetPath) {
+        String name = assetPath.substring(assetPath.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,206 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.asset.AssetManager;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.util.CollisionShapeFactory;
+import com.jme3.export.Savable;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * keeps the generated physics shape of a scene on disk so we don't rebuild the triangle mesh
+ * BVH on every launch.
+ *
+ * the file name contains a hash of the loaded scene itself (every transform, vertex position
+ * and index the shape is built from), so a change anywhere makes the old file stale. hashing
+ * the j3o wouldn't do: OfficeScene.j3o only links to the office model, and the baked scene
+ * is a different file with the same geometry. the files live in the shared cache folder,
+ * see CacheFiles.
+ */
+public class CollisionShapeCache {
+
+    public enum ShapeMode {
+        /** exact triangle mesh, what the game always used */
+        MESH,
+        /** one convex hull per geometry, cheaper narrow phase but only for scenes made of separate convex pieces */
+        HULLS,
+        /** one box per geometry, the cheapest, same restriction as HULLS */
+        BOXES
+    }
+
+    // bump when the way shapes are built changes, so old files aren't picked up
+    private static final int FORMAT_VERSION = 2;
+
+    private final AssetManager assetManager;
+    private final CacheFiles cache = new CacheFiles();
+    private ExecutorService executor;
+
+    public CollisionShapeCache(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    /**
+     * @param sceneAsset only names the file, the key comes from the scene's geometry
+     * @return the cached shape, or null if there is none for the current version of the scene
+     */
+    public CollisionShape loadCached(String sceneAsset, Spatial scene, ShapeMode mode) {
+        File file = cacheFile(sceneAsset, scene, mode);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            BinaryImporter importer = BinaryImporter.getInstance();
+            importer.setAssetManager(assetManager);
+            Savable loaded = importer.load(file);
+            System.out.println("Collision shape loaded from cache: " + file.getName());
+            return (CollisionShape) loaded;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Collision shape cache unreadable, rebuilding: " + file);
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * builds the shape on a worker thread, writes it to the cache and hands it to onReady
+     * on the render thread. has to be called from the render thread.
+     */
+    public void rebuildInBackground(String sceneAsset, Spatial scene, ShapeMode mode,
+                                    Application app, Consumer<CollisionShape> onReady) {
+        // the renderer rewinds the mesh buffers while uploading them, so the worker gets its own copy
+        Spatial copy = scene.deepClone();
+
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "collision-shape-builder");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        executor.submit(() -> {
+            long start = System.nanoTime();
+            CollisionShape shape = build(copy, mode);
+            System.out.printf("Collision shape (%s) built in %.1f ms%n", mode, (System.nanoTime() - start) / 1e6);
+            app.enqueue(() -> onReady.accept(shape));
+            // same geometry as the scene, so the same key loadCached looks for
+            save(cacheFile(sceneAsset, copy, mode), sceneAsset, mode, shape);
+        });
+    }
+
+    public static CollisionShape build(Spatial scene, ShapeMode mode) {
+        switch (mode) {
+            case HULLS:
+                return CollisionShapeFactory.createDynamicMeshShape(scene);
+            case BOXES:
+                return CollisionShapeFactory.createBoxShape(scene);
+            case MESH:
+            default:
+                return CollisionShapeFactory.createMeshShape(scene);
+        }
+    }
+
+    private void save(File file, String sceneAsset, ShapeMode mode, CollisionShape shape) {
+        if (file == null) {
+            return;
+        }
+        try {
+            cache.prepare(sceneAsset, suffix(mode));
+            BinaryExporter.getInstance().save(shape, file);
+            System.out.println("Collision shape cached: " + file);
+        } catch (IOException e) {
+            System.err.println("Could not write collision shape cache " + file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * e.g. OfficeScene.1a2b3c4d5e6f7a8b.mesh.shape.j3o
+     */
+    private File cacheFile(String sceneAsset, Spatial scene, ShapeMode mode) {
+        return cache.file(sceneAsset, geometryHash(scene), suffix(mode));
+    }
+
+    private static String suffix(ShapeMode mode) {
+        return mode.name().toLowerCase() + ".shape.j3o";
+    }
+
+    /**
+     * everything the shape depends on: the transform of every spatial and the positions and
+     * indices of every mesh, in scene graph order. only reads the buffers (through duplicates),
+     * so the scene can be in use elsewhere.
+     */
+    static String geometryHash(Spatial scene) {
+        MessageDigest digest = CacheFiles.digest(FORMAT_VERSION);
+        ByteBuffer transform = ByteBuffer.allocate(11 * 4);
+        scene.depthFirstTraversal(spatial -> {
+            Vector3f t = spatial.getLocalTranslation();
+            Quaternion r = spatial.getLocalRotation();
+            Vector3f s = spatial.getLocalScale();
+            transform.clear();
+            transform.putFloat(t.x).putFloat(t.y).putFloat(t.z)
+                    .putFloat(r.getX()).putFloat(r.getY()).putFloat(r.getZ()).putFloat(r.getW())
+                    .putFloat(s.x).putFloat(s.y).putFloat(s.z)
+                    // nodes and geometries with the same transform aren't the same scene
+                    .putFloat(spatial instanceof Geometry ? 1 : 0);
+            transform.flip();
+            digest.update(transform);
+            if (spatial instanceof Geometry) {
+                Mesh mesh = ((Geometry) spatial).getMesh();
+                update(digest, mesh.getBuffer(VertexBuffer.Type.Position));
+                update(digest, mesh.getBuffer(VertexBuffer.Type.Index));
+            }
+        });
+        return CacheFiles.hex(digest);
+    }
+
+    private static void update(MessageDigest digest, VertexBuffer vb) {
+        Buffer data = vb != null ? vb.getData() : null;
+        if (data == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        // duplicates, the renderer moves the positions of the originals while uploading
+        ByteBuffer bytes;
+        if (data instanceof FloatBuffer) {
+            FloatBuffer src = (FloatBuffer) ((FloatBuffer) data).duplicate().position(0);
+            bytes = ByteBuffer.allocate(src.limit() * 4).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asFloatBuffer().put(src);
+        } else if (data instanceof IntBuffer) {
+            IntBuffer src = (IntBuffer) ((IntBuffer) data).duplicate().position(0);
+            bytes = ByteBuffer.allocate(src.limit() * 4).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asIntBuffer().put(src);
+        } else if (data instanceof ShortBuffer) {
+            ShortBuffer src = (ShortBuffer) ((ShortBuffer) data).duplicate().position(0);
+            bytes = ByteBuffer.allocate(src.limit() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asShortBuffer().put(src);
+        } else if (data instanceof ByteBuffer) {
+            bytes = (ByteBuffer) ((ByteBuffer) data).duplicate().position(0);
+        } else {
+            // nothing else is used for positions or indices
+            digest.update((byte) 0);
+            return;
+        }
+        digest.update(bytes);
+    }
+}
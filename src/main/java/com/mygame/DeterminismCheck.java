@@ -0,0 +1,209 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.bullet.control.BetterCharacterControl;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.scene.Spatial;
+
+/**
+ * headless physics check (run with --determinism-check, gradle determinismCheck or check).
+ *
+ * plays the same scripted WASD input twice, once as fast as possible and once with uneven
+ * frame times, and records the player position after every physics step. with the fixed time
+ * step both runs have to end up at the same positions, if they don't something still depends
+ * on the frame rate. prints the biggest difference and exits with 1 when it's over TOLERANCE.
+ *
+ * what gets drawn is checked too: every frame the player node and the camera have to sit on
+ * the line between the last two physics states of the first run (the interpolation), however
+ * the frames fall between the steps. a drawn position that runs ahead of the newest step,
+ * lags more than one step behind or leaves the camera off the head fails the same way.
+ *
+ * the input is driven by the physics step number, not by frames, so it's the same in both runs.
+ */
+public class DeterminismCheck extends BaseAppState implements PhysicsTickListener {
+
+    private static final int TICKS = 600;
+    // bullet restarts from a warp with fresh contacts, a tiny bit of float noise is fine
+    private static final float TOLERANCE = 1e-4f;
+
+    private final Vector3f[][] positions = new Vector3f[2][TICKS];
+
+    private PlayerController player;
+    private BetterCharacterControl playerControl;
+    private Vector3f spawn;
+    private PhysicsSpace space;
+
+    private int run = 0;
+    private int tick = 0;
+    private int frame = 0;
+    private boolean done = false;
+
+    // the drawn positions, checked in render()
+    private Spatial playerNode;
+    private Camera cam;
+    private float renderDiff = 0;
+    private final Vector3f expectedCam = new Vector3f();
+    private final Vector3f segment = new Vector3f();
+    private final Vector3f offset = new Vector3f();
+
+    @Override
+    protected void initialize(Application app) {}
+
+    /**
+     * the scene is loaded in the background, so this waits for the first frame where it's there.
+     */
+    private void start() {
+        Main main = (Main) getApplication();
+        player = main.getStateManager().getState(PlayerController.class);
+        playerControl = main.getPlayerControl();
+        spawn = Main.PLAYER_SPAWN;
+        space = main.getStateManager().getState(BulletAppState.class).getPhysicsSpace();
+        space.addTickListener(this);
+        playerNode = playerControl.getSpatial();
+        cam = main.getCamera();
+        System.out.println("DETERMINISM: " + TICKS + " physics steps, 2 runs");
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        if (space != null) {
+            space.removeTickListener(this);
+        }
+    }
+
+    @Override
+    protected void onEnable() {}
+
+    @Override
+    protected void onDisable() {}
+
+    @Override
+    public void update(float tpf) {
+        if (space == null) {
+            // the PlayerController has to be listening to the physics before this does, see prePhysicsTick
+            PlayerController controller = getApplication().getStateManager().getState(PlayerController.class);
+            if (!((Main) getApplication()).isSceneReady() || controller == null || !controller.isInitialized()) {
+                return;
+            }
+            start();
+        }
+        if (done) {
+            finish();
+            return;
+        }
+        // the second run gets uneven frames: 0, 4, 8, 12 ms of extra work in turns
+        if (run == 1) {
+            try {
+                Thread.sleep((frame++ % 4) * 4);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * the follow control placed the player and the camera during the scene update, and the
+     * physics thread only steps after this (see PlayerController).
+     */
+    @Override
+    public void render(RenderManager rm) {
+        // two steps of this run are needed for a line to be on
+        if (space == null || done || tick < 2) {
+            return;
+        }
+        Vector3f drawn = playerNode.getWorldTranslation();
+        renderDiff = Math.max(renderDiff, distanceToStep(drawn, tick));
+        expectedCam.set(drawn).addLocal(0, player.getEyeHeight(), 0);
+        renderDiff = Math.max(renderDiff, cam.getLocation().distance(expectedCam));
+    }
+
+    /**
+     * how far the point is from the line between the first run's states after steps - 2 and
+     * steps - 1.
+     */
+    private float distanceToStep(Vector3f point, int steps) {
+        Vector3f from = positions[0][steps - 2];
+        segment.set(positions[0][steps - 1]).subtractLocal(from);
+        offset.set(point).subtractLocal(from);
+        float lengthSquared = segment.lengthSquared();
+        float t = lengthSquared > 0 ? FastMath.clamp(offset.dot(segment) / lengthSquared, 0, 1) : 0;
+        return offset.subtractLocal(segment.multLocal(t)).length();
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+        if (done) {
+            return;
+        }
+        if (tick == 0) {
+            // both runs start from standing still at the spawn point
+            playerControl.warp(spawn);
+            playerControl.getRigidBody().setLinearVelocity(Vector3f.ZERO);
+            playerControl.setWalkDirection(Vector3f.ZERO);
+            player.resetInterpolation();
+        }
+        // the tick listeners run in the order they were added, the PlayerController already
+        // read the input for this step, so this is the input for the next one
+        script(tick + 1);
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+        if (done) {
+            return;
+        }
+        positions[run][tick] = playerControl.getRigidBody().getPhysicsLocation(null);
+        tick++;
+        if (tick == TICKS) {
+            tick = 0;
+            run++;
+            if (run == 2) {
+                done = true;
+            } else {
+                System.out.println("DETERMINISM: first run done, again with uneven frame times");
+            }
+        }
+    }
+
+    /**
+     * forward, forward + left, back, right, then stand still. the last part has no keys so a new
+     * run starts with the same (empty) input the first one did.
+     */
+    private void script(int step) {
+        int part = step * 5 / TICKS;
+        player.setInput(part == 1, part == 3, part <= 1, part == 2);
+    }
+
+    private void finish() {
+        float maxDiff = 0;
+        int worstTick = 0;
+        for (int i = 0; i < TICKS; i++) {
+            float diff = positions[0][i].distance(positions[1][i]);
+            if (diff > maxDiff) {
+                maxDiff = diff;
+                worstTick = i;
+            }
+        }
+        System.out.println("DETERMINISM: end position " + positions[0][TICKS - 1] + " / " + positions[1][TICKS - 1]);
+        System.out.println("DETERMINISM: biggest difference " + maxDiff + " at step " + worstTick);
+        System.out.println("DETERMINISM: drawn position off the interpolated path by at most " + renderDiff);
+        setEnabled(false);
+        if (maxDiff > TOLERANCE) {
+            System.err.println("DETERMINISM: FAILED, the player moves differently at different frame rates");
+            System.exit(1);
+        }
+        if (renderDiff > TOLERANCE) {
+            System.err.println("DETERMINISM: FAILED, the player isn't drawn between the last two physics steps");
+            System.exit(1);
+        }
+        System.out.println("DETERMINISM: passed");
+        getApplication().stop();
+    }
+}
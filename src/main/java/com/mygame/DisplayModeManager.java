@@ -0,0 +1,157 @@
+package com.mygame;
+
+import com.jme3.app.LegacyApplication;
+import com.jme3.system.AppSettings;
+import com.jme3.system.lwjgl.LwjglWindow;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.glfw.GLFWVidMode;
+
+/**
+ * fullscreen and resolution changes without restarting the context.
+ *
+ * restart() destroys the window and the GL context with it, so every texture, mesh and shader
+ * is uploaded again and the JavaFX bridge starts over (seconds). with LWJGL3 the same window can
+ * be moved onto a monitor or resized through GLFW instead, the context survives and jME only
+ * sees a reshape: the cameras resize themselves, DynamicResolution rebuilds its buffer and
+ * the post processor on the next frame (see Main.reshape). shadow maps don't depend on the
+ * window size and stay as they are.
+ *
+ * other context types still fall back to restart(). everything here has to run on the jME
+ * thread, GLFW only allows window calls from the thread that made the window.
+ */
+public class DisplayModeManager {
+
+    // used when the monitor can't be asked (not LWJGL3)
+    private static final int[][] FALLBACK_RESOLUTIONS = {{1280, 720}, {1600, 900}, {1920, 1080}, {2560, 1440}};
+
+    private final LegacyApplication app;
+    private final AppSettings settings;
+    // "WIDTHxHEIGHT", smallest first
+    private final List<String> resolutions = new ArrayList<>();
+
+    // where the window was before going fullscreen
+    private int windowedX = -1, windowedY = -1;
+
+    public DisplayModeManager(LegacyApplication app, AppSettings settings) {
+        this.app = app;
+        this.settings = settings;
+
+        List<int[]> sizes = new ArrayList<>();
+        long window = windowHandle();
+        GLFWVidMode.Buffer modes = window != 0 ? GLFW.glfwGetVideoModes(monitor(window)) : null;
+        if (modes != null) {
+            for (int i = 0; i < modes.limit(); i++) {
+                sizes.add(new int[]{modes.get(i).width(), modes.get(i).height()});
+            }
+        } else {
+            Collections.addAll(sizes, FALLBACK_RESOLUTIONS);
+        }
+        sizes.add(new int[]{settings.getWidth(), settings.getHeight()});
+        sizes.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        for (int[] size : sizes) {
+            // the monitor lists every size once per refresh rate and bit depth
+            String name = format(size[0], size[1]);
+            if (!resolutions.contains(name)) {
+                resolutions.add(name);
+            }
+        }
+    }
+
+    /**
+     * the resolutions the monitor supports, "WIDTHxHEIGHT".
+     */
+    public List<String> getResolutions() {
+        return Collections.unmodifiableList(resolutions);
+    }
+
+    public String getCurrentResolution() {
+        return format(settings.getWidth(), settings.getHeight());
+    }
+
+    public boolean isFullscreen() {
+        return settings.isFullscreen();
+    }
+
+    public void setFullscreen(boolean fullscreen) {
+        if (fullscreen == settings.isFullscreen()) {
+            return;
+        }
+        settings.setFullscreen(fullscreen);
+        apply();
+    }
+
+    /**
+     * @param resolution "WIDTHxHEIGHT", as in getResolutions()
+     */
+    public void setResolution(String resolution) {
+        String[] parts = resolution.split("x");
+        int width = Integer.parseInt(parts[0].trim());
+        int height = Integer.parseInt(parts[1].trim());
+        if (width == settings.getWidth() && height == settings.getHeight()) {
+            return;
+        }
+        settings.setResolution(width, height);
+        apply();
+    }
+
+    private void apply() {
+        long window = windowHandle();
+        if (window == 0) {
+            // no way to change this window in place, recreate it
+            app.setSettings(settings);
+            app.restart();
+            return;
+        }
+
+        int width = settings.getWidth(), height = settings.getHeight();
+        long current = GLFW.glfwGetWindowMonitor(window);
+        if (settings.isFullscreen()) {
+            long monitor = monitor(window);
+            if (current == 0) {
+                int[] x = new int[1], y = new int[1];
+                GLFW.glfwGetWindowPos(window, x, y);
+                windowedX = x[0];
+                windowedY = y[0];
+            }
+            GLFWVidMode mode = GLFW.glfwGetVideoMode(monitor);
+            GLFW.glfwSetWindowMonitor(window, monitor, 0, 0, width, height,
+                    mode != null ? mode.refreshRate() : GLFW.GLFW_DONT_CARE);
+        } else {
+            int[] x = new int[1], y = new int[1];
+            GLFWVidMode mode = GLFW.glfwGetVideoMode(monitor(window));
+            if (current == 0) {
+                // already windowed, the window stays where it is
+                GLFW.glfwGetWindowPos(window, x, y);
+            } else if (windowedX >= 0) {
+                // back to where it was before fullscreen
+                x[0] = windowedX;
+                y[0] = windowedY;
+            } else if (mode != null) {
+                x[0] = (mode.width() - width) / 2;
+                y[0] = (mode.height() - height) / 2;
+            }
+            GLFW.glfwSetWindowMonitor(window, 0, Math.max(0, x[0]), Math.max(0, y[0]), width, height, GLFW.GLFW_DONT_CARE);
+        }
+        // the framebuffer size callback reshapes everything on the next frame
+        System.out.println("Display mode: " + getCurrentResolution() + (settings.isFullscreen() ? " fullscreen" : " windowed"));
+    }
+
+    private long windowHandle() {
+        return app.getContext() instanceof LwjglWindow ? ((LwjglWindow) app.getContext()).getWindowHandle() : 0;
+    }
+
+    /**
+     * the monitor the window is on in fullscreen, the primary one otherwise.
+     */
+    private static long monitor(long window) {
+        long monitor = GLFW.glfwGetWindowMonitor(window);
+        return monitor != 0 ? monitor : GLFW.glfwGetPrimaryMonitor();
+    }
+
+    private static String format(int width, int height) {
+        return width + "x" + height;
+    }
+}
@@ -9,11 +9,12 @@ import com.jme3.input.controls.KeyTrigger;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 
-public class DoorExit {
+public class DoorExit implements ProximityTriggers.ZoneListener {
 
     private final Application app;
     private final Node guiNode;
-    private final Vector3f zonePos;
+    private final ProximityTriggers triggers;
+    private final ProximityTriggers.Zone zone;
     private final float radius = 3f;
 
     private BitmapText prompt;
@@ -21,12 +22,13 @@ public class DoorExit {
 
     public boolean exitedDoor = false;
 
-    public DoorExit(Application app, Node guiNode, Vector3f pos) {
+    public DoorExit(Application app, Node guiNode, ProximityTriggers triggers, Vector3f pos) {
         this.app = app;
         this.guiNode = guiNode;
-        this.zonePos = pos;
+        this.triggers = triggers;
 
         init();
+        zone = triggers.addZone(pos, radius, this);
     }
 
     private void init() {
@@ -47,32 +49,29 @@ public class DoorExit {
             if (!isPressed) return;  // Only on key press
             if (!name.equals("ExitDoor")) return;
 
-            // Distance check
-            float distance = app.getCamera().getLocation().distance(zonePos);
-            if (distance <= radius) {
+            // only works while standing in the zone
+            if (!exitedDoor && zone.isInside()) {
                 exitedDoor = true;
                 hidePrompt();
+                // nothing to show anymore
+                triggers.removeZone(zone);
             }
         }
     };
 
-    public void update(float tpf) {
-        if (exitedDoor) {
-            hidePrompt();
-            return;  // Stop updating
-        }
-
+    @Override
+    public void onEnter(ProximityTriggers.Zone zone) {
         // Show prompt if player is close
-        float distance = app.getCamera().getLocation().distance(zonePos);
-        if (distance <= radius) {
-            if (!promptVisible) {
-                guiNode.attachChild(prompt);
-                promptVisible = true;
-            }
-        } else {
-            hidePrompt();
+        if (!exitedDoor && !promptVisible) {
+            guiNode.attachChild(prompt);
+            promptVisible = true;
         }
     }
+
+    @Override
+    public void onExit(ProximityTriggers.Zone zone) {
+        hidePrompt();
+    }
     
     private void endScreen() {
         
@@ -0,0 +1,316 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.material.Material;
+import com.jme3.math.Vector2f;
+import com.jme3.post.Filter;
+import com.jme3.post.FilterPostProcessor;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.texture.FrameBuffer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.ui.Picture;
+import java.util.Iterator;
+
+/**
+ * renders the 3D view at a lower resolution when the frame time goes over the target and
+ * scales it back up to the window with a bit of sharpening. the gui and the JavaFX overlay
+ * are separate views and stay at full resolution.
+ *
+ * the view renders into an offscreen buffer the size of the window, only the bottom left
+ * part (scale x scale) is used. that's the same multi-view setup FilterPostProcessor
+ * already supports, so the whole post chain (SSAO and DoF need the depth) runs at the lower
+ * resolution and the upscale comes after it instead of before.
+ *
+ * the post processor sizes all of its filter buffers (SSAO, bloom, DoF, FXAA) from the viewport
+ * when it initializes, so a new scale means re-allocating every one of them. that's why the
+ * scale only moves between a few fixed steps (SCALES), at most every CHANGE_INTERVAL, and the
+ * frames right after a change don't count: the re-allocation hitch would otherwise look like
+ * the scene got heavier and push the scale down again.
+ *
+ * jME's post processor only looks at the view's output buffer the very first time it
+ * initializes, after that a re-initialization (and a window reshape) keeps the buffer it had.
+ * so this state puts the processor on the view itself, after the offscreen buffer, and every
+ * time the buffer or the scale changes the filters move to a new FilterPostProcessor
+ * (restartPostProcessor) instead of taking the old one off and on again.
+ *
+ * when the window changes size (DisplayModeManager) the buffer is rebuilt on the next update,
+ * jME doesn't resize a camera that renders into its own frame buffer.
+ */
+public class DynamicResolution extends BaseAppState {
+
+    // the scales the view can render at, smallest first. eighths keep the buffer sizes even
+    private static final float[] SCALES = {0.5f, 0.625f, 0.75f, 0.875f, 1.0f};
+    static final float MIN_SCALE = SCALES[0];
+    static final float MAX_SCALE = SCALES[SCALES.length - 1];
+    // changing the scale re-initializes the post processor, so don't do it often
+    private static final float CHANGE_INTERVAL = 2f;
+    // frames ignored after a change, the re-initialization itself is slow
+    private static final int SETTLE_FRAMES = 10;
+
+    private final ViewPort viewPort;
+    // replaced by a new one with the same filters whenever the output changes
+    private FilterPostProcessor fpp;
+
+    private float targetFrameTime = 1f / 60f;
+    private float scale = MAX_SCALE;
+    private boolean adaptive = true;
+    private float sharpness = 0.5f;
+
+    // smoothed frame time
+    private float frameTime = -1f;
+    private float sinceChange = 0;
+    private int settleFrames = 0;
+
+    private int width;
+    private int height;
+    private FrameBuffer frameBuffer;
+    private Texture2D color;
+    private Picture picture;
+    private ViewPort upscaleView;
+    private Node upscaleRoot;
+    private Material upscaleMaterial;
+    // the window size from the last reshape, applied in update
+    private int pendingWidth, pendingHeight;
+
+    /**
+     * @param fpp the post processing filters, not on the view yet: this state adds it once the
+     *            offscreen buffer is set up (or for the window, while disabled)
+     */
+    public DynamicResolution(ViewPort viewPort, FilterPostProcessor fpp) {
+        this.viewPort = viewPort;
+        this.fpp = fpp;
+    }
+
+    /**
+     * the frame time to stay under, in seconds (default 1/60).
+     */
+    public void setTargetFrameTime(float seconds) {
+        targetFrameTime = seconds;
+    }
+
+    /**
+     * turns the automatic scaling off and renders at a fixed scale instead.
+     */
+    public void setFixedScale(float scale) {
+        adaptive = false;
+        applyScale(scale, false);
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * true while the automatic scaling is on and has room to go lower (QualityGovernor waits for this).
+     */
+    public boolean canScaleDown() {
+        return isEnabled() && adaptive && scale > MIN_SCALE;
+    }
+
+    /**
+     * true while the automatic scaling is on and isn't back at full resolution yet.
+     */
+    public boolean canScaleUp() {
+        return isEnabled() && adaptive && scale < MAX_SCALE;
+    }
+
+    public void setSharpness(float sharpness) {
+        this.sharpness = sharpness;
+        if (upscaleMaterial != null) {
+            upscaleMaterial.setFloat("Sharpness", sharpness);
+        }
+    }
+
+    /**
+     * the window has a new size, called from Main.reshape. the buffer is rebuilt on the next update.
+     */
+    public void reshape(int width, int height) {
+        pendingWidth = width;
+        pendingHeight = height;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        Camera cam = viewPort.getCamera();
+        width = cam.getWidth();
+        height = cam.getHeight();
+
+        upscaleMaterial = new Material(app.getAssetManager(), "MatDefs/Upscale.j3md");
+        upscaleMaterial.setFloat("Sharpness", sharpness);
+
+        picture = new Picture("Upscaled Scene");
+        picture.setMaterial(upscaleMaterial);
+        createBuffer();
+
+        upscaleRoot = new Node("Upscale Root");
+        upscaleRoot.setQueueBucket(RenderQueue.Bucket.Gui);
+        upscaleRoot.setCullHint(Spatial.CullHint.Never);
+        upscaleRoot.attachChild(picture);
+
+        // a main view added after the scene's, so it draws before the gui (a post view)
+        upscaleView = app.getRenderManager().createMainView("Upscale", new Camera(width, height));
+        upscaleView.setClearFlags(false, false, false);
+        upscaleView.attachScene(upscaleRoot);
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        app.getRenderManager().removeMainView(upscaleView);
+    }
+
+    @Override
+    protected void onEnable() {
+        upscaleView.setEnabled(true);
+        applyScale(scale, true);
+    }
+
+    @Override
+    protected void onDisable() {
+        // straight to the window at full size
+        restartPostProcessor();
+        upscaleView.setEnabled(false);
+    }
+
+    /**
+     * moves the filters to a new post processor that renders into the current target: the
+     * offscreen buffer at the current scale, or the window while this is disabled. also what
+     * the QualityGovernor calls when a filter has to set up its buffers again.
+     */
+    public void restartPostProcessor() {
+        if (!isInitialized()) {
+            // onEnable does it
+            return;
+        }
+        // the old one puts back the output and the camera viewport it started with
+        viewPort.removeProcessor(fpp);
+
+        Camera cam = viewPort.getCamera();
+        cam.resize(width, height, false);
+        if (isEnabled()) {
+            viewPort.setOutputFrameBuffer(frameBuffer);
+            cam.setViewPort(0, scale, 0, scale);
+        } else {
+            viewPort.setOutputFrameBuffer(null);
+            cam.setViewPort(0, 1, 0, 1);
+        }
+
+        FilterPostProcessor next = new FilterPostProcessor(getApplication().getAssetManager());
+        next.setNumSamples(fpp.getNumSamples());
+        for (Iterator<Filter> it = fpp.getFilterIterator(); it.hasNext(); ) {
+            next.addFilter(it.next());
+        }
+        fpp = next;
+        // initializes on the next render, against the output and viewport set above
+        viewPort.addProcessor(fpp);
+    }
+
+    @Override
+    public void update(float tpf) {
+        if (pendingWidth > 0) {
+            if (pendingWidth != width || pendingHeight != height) {
+                resize(pendingWidth, pendingHeight);
+            }
+            pendingWidth = pendingHeight = 0;
+        }
+
+        sinceChange += tpf;
+        if (settleFrames > 0) {
+            settleFrames--;
+        } else {
+            frameTime = frameTime < 0 ? tpf : frameTime + (tpf - frameTime) * 0.1f;
+        }
+
+        if (adaptive && sinceChange >= CHANGE_INTERVAL && frameTime >= 0) {
+            int index = index(scale);
+            if (frameTime > targetFrameTime * 1.05f && index > 0) {
+                applyScale(SCALES[index - 1], false);
+            } else if (frameTime < targetFrameTime * 0.8f && index < SCALES.length - 1) {
+                applyScale(SCALES[index + 1], false);
+            }
+        }
+
+        upscaleRoot.updateLogicalState(tpf);
+        upscaleRoot.updateGeometricState();
+    }
+
+    /**
+     * the offscreen buffer and the picture that shows it, at width x height.
+     */
+    private void createBuffer() {
+        color = new Texture2D(width, height, Image.Format.RGBA16F);
+        color.setMinFilter(Texture.MinFilter.BilinearNoMipMaps);
+        color.setMagFilter(Texture.MagFilter.Bilinear);
+        frameBuffer = new FrameBuffer(width, height, 1);
+        frameBuffer.addColorTarget(FrameBuffer.FrameBufferTarget.newTarget(color));
+        frameBuffer.setDepthTarget(FrameBuffer.FrameBufferTarget.newTarget(Image.Format.Depth));
+
+        upscaleMaterial.setTexture("Texture", color);
+        upscaleMaterial.setVector2("TexelSize", new Vector2f(1f / width, 1f / height));
+        picture.setWidth(width);
+        picture.setHeight(height);
+    }
+
+    private void resize(int newWidth, int newHeight) {
+        FrameBuffer oldBuffer = frameBuffer;
+        Texture2D oldColor = color;
+        width = newWidth;
+        height = newHeight;
+        createBuffer();
+
+        // the scene camera keeps its field of view, only the aspect changes
+        viewPort.getCamera().resize(width, height, true);
+        if (isEnabled()) {
+            applyScale(scale, true);
+        }
+
+        // the old buffer is gone from every view, free it now instead of waiting for the GC
+        getApplication().getRenderer().deleteFrameBuffer(oldBuffer);
+        getApplication().getRenderer().deleteImage(oldColor.getImage());
+    }
+
+    /**
+     * the step in SCALES closest to scale.
+     */
+    private static int index(float scale) {
+        int best = 0;
+        for (int i = 1; i < SCALES.length; i++) {
+            if (Math.abs(SCALES[i] - scale) < Math.abs(SCALES[best] - scale)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private void applyScale(float newScale, boolean force) {
+        newScale = SCALES[index(newScale)];
+        sinceChange = 0;
+        if (newScale == scale && !force) {
+            return;
+        }
+        scale = newScale;
+        // judge the new scale on its own frames, not the ones before or the hitch of the change
+        frameTime = -1f;
+        settleFrames = SETTLE_FRAMES;
+        if (upscaleMaterial != null) {
+            upscaleMaterial.setFloat("Scale", scale);
+        }
+        if (!isEnabled() || !isInitialized()) {
+            return;
+        }
+
+        // the post processor sizes its buffers from the camera's viewport when it initializes,
+        // this is the only place they get re-allocated (besides a window resize)
+        restartPostProcessor();
+    }
+}
@@ -0,0 +1,266 @@
+package com.mygame;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.PhysicsRayTestResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.FastMath;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * finds what the camera is looking at for the depth of field autofocus.
+ *
+ * instead of colliding with the whole rootNode every frame (player, audio nodes and all),
+ * the static geometry is put into a small BVH once at load time. each leaf is a single
+ * geometry whose mesh keeps its own BIH tree, so a query only touches the meshes the ray
+ * actually passes through. bullet's ray test against the room's rigid body can be used instead,
+ * AutofocusBenchmark measures the two against each other.
+ */
+public class FocusPicker {
+
+    public enum Backend { BVH, PHYSICS }
+
+    private Backend backend = Backend.BVH;
+    private float maxDistance = 100f;
+
+    // query throttling
+    private int queryInterval = 4;
+    private float moveThreshold = 0.25f;
+    private float turnThresholdCos = FastMath.cos(2f * FastMath.DEG_TO_RAD);
+    private int framesSinceQuery = Integer.MAX_VALUE;
+    private final Vector3f lastLocation = new Vector3f();
+    private final Vector3f lastDirection = new Vector3f();
+    private float lastDistance = -1f;
+    private long lastQueryNanos = 0;
+    private long queryCount = 0;
+
+    // BVH, stored as flat arrays. a node is a leaf when leafGeometry[node] != null
+    private BoundingBox[] bounds = new BoundingBox[0];
+    private int[] leftChild = new int[0];
+    private int[] rightChild = new int[0];
+    private Geometry[] leafGeometry = new Geometry[0];
+    private int nodeCount = 0;
+    private int[] stack = new int[0];
+
+    // physics backend
+    private PhysicsSpace physicsSpace;
+    private PhysicsCollisionObject physicsTarget;
+    private final List<PhysicsRayTestResult> physicsResults = new ArrayList<>();
+
+    // reused every query
+    private final Ray ray = new Ray();
+    private final CollisionResults results = new CollisionResults();
+    private final Vector3f direction = new Vector3f();
+    private final Vector3f rayEnd = new Vector3f();
+
+    /**
+     * builds the BVH over every geometry currently under the spatial. world bounds have to be
+     * up to date. anything attached later isn't pickable.
+     */
+    public void build(Spatial scene) {
+        List<Geometry> geoms = new ArrayList<>();
+        scene.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                if (geom.getWorldBound() != null && geom.getMesh() != null) {
+                    // build the mesh BIH now instead of on the first ray that hits it
+                    geom.getMesh().createCollisionData();
+                    geoms.add(geom);
+                }
+            }
+        });
+
+        int capacity = Math.max(1, geoms.size() * 2 - 1);
+        bounds = new BoundingBox[capacity];
+        leftChild = new int[capacity];
+        rightChild = new int[capacity];
+        leafGeometry = new Geometry[capacity];
+        stack = new int[capacity];
+        nodeCount = 0;
+
+        if (!geoms.isEmpty()) {
+            buildNode(geoms, 0, geoms.size());
+        }
+        framesSinceQuery = Integer.MAX_VALUE;
+        System.out.println("FocusPicker: BVH with " + nodeCount + " nodes over " + geoms.size() + " geometries");
+    }
+
+    /**
+     * lets the picker use bullet instead of the BVH. only hits on the target object count,
+     * so the player capsule is ignored.
+     */
+    public void setPhysicsTarget(PhysicsSpace space, PhysicsCollisionObject target) {
+        this.physicsSpace = space;
+        this.physicsTarget = target;
+    }
+
+    public void setBackend(Backend backend) {
+        if (backend == Backend.PHYSICS && physicsSpace == null) {
+            throw new IllegalStateException("setPhysicsTarget() has to be called before using the physics backend");
+        }
+        this.backend = backend;
+        framesSinceQuery = Integer.MAX_VALUE;
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * re-query at least every n frames (1 = every frame).
+     */
+    public void setQueryInterval(int frames) {
+        queryInterval = Math.max(1, frames);
+    }
+
+    /**
+     * re-query right away when the camera moved further than this (world units)
+     * or turned more than the given angle (degrees) since the last query.
+     */
+    public void setMoveThreshold(float distance, float angleDegrees) {
+        moveThreshold = distance;
+        turnThresholdCos = FastMath.cos(angleDegrees * FastMath.DEG_TO_RAD);
+    }
+
+    public void setMaxDistance(float maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * time the last real query took, mostly for benchmarking.
+     */
+    public long getLastQueryNanos() {
+        return lastQueryNanos;
+    }
+
+    /**
+     * how many real queries ran so far (throttled frames don't count).
+     */
+    public long getQueryCount() {
+        return queryCount;
+    }
+
+    /**
+     * distance to whatever is in the middle of the screen, or -1 if nothing is hit.
+     * only actually casts a ray when the interval is up or the camera moved enough,
+     * otherwise it returns the previous result.
+     */
+    public float pick(Camera cam) {
+        cam.getDirection(direction);
+        if (framesSinceQuery < queryInterval
+                && cam.getLocation().distanceSquared(lastLocation) <= moveThreshold * moveThreshold
+                && direction.dot(lastDirection) >= turnThresholdCos) {
+            framesSinceQuery++;
+            return lastDistance;
+        }
+
+        long start = System.nanoTime();
+        lastDistance = backend == Backend.PHYSICS
+                ? pickPhysics(cam.getLocation(), direction)
+                : pickBvh(cam.getLocation(), direction);
+        lastQueryNanos = System.nanoTime() - start;
+        queryCount++;
+
+        lastLocation.set(cam.getLocation());
+        lastDirection.set(direction);
+        framesSinceQuery = 1;
+        return lastDistance;
+    }
+
+    private float pickBvh(Vector3f origin, Vector3f dir) {
+        if (nodeCount == 0) {
+            return -1f;
+        }
+        results.clear();
+        ray.setOrigin(origin);
+        ray.setDirection(dir);
+        ray.setLimit(maxDistance);
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!bounds[node].intersects(ray)) {
+                continue;
+            }
+            if (leafGeometry[node] != null) {
+                leafGeometry[node].collideWith(ray, results);
+            } else {
+                stack[top++] = leftChild[node];
+                stack[top++] = rightChild[node];
+            }
+        }
+
+        if (results.size() == 0) {
+            return -1f;
+        }
+        float dist = results.getClosestCollision().getDistance();
+        return dist <= maxDistance ? dist : -1f;
+    }
+
+    private float pickPhysics(Vector3f origin, Vector3f dir) {
+        rayEnd.set(dir).multLocal(maxDistance).addLocal(origin);
+        physicsResults.clear();
+        physicsSpace.rayTest(origin, rayEnd, physicsResults);
+
+        float closest = Float.MAX_VALUE;
+        for (int i = 0; i < physicsResults.size(); i++) {
+            PhysicsRayTestResult hit = physicsResults.get(i);
+            if (hit.getCollisionObject() == physicsTarget && hit.getHitFraction() < closest) {
+                closest = hit.getHitFraction();
+            }
+        }
+        return closest == Float.MAX_VALUE ? -1f : closest * maxDistance;
+    }
+
+    /**
+     * top down build, splits at the median centroid along the longest axis.
+     */
+    private int buildNode(List<Geometry> geoms, int from, int to) {
+        int node = nodeCount++;
+
+        BoundingBox box = new BoundingBox();
+        box.setCenter(geoms.get(from).getWorldBound().getCenter());
+        box.setXExtent(0);
+        box.setYExtent(0);
+        box.setZExtent(0);
+        for (int i = from; i < to; i++) {
+            box.mergeLocal(geoms.get(i).getWorldBound());
+        }
+        bounds[node] = box;
+
+        if (to - from == 1) {
+            leafGeometry[node] = geoms.get(from);
+            return node;
+        }
+
+        int axis;
+        if (box.getXExtent() >= box.getYExtent() && box.getXExtent() >= box.getZExtent()) {
+            axis = 0;
+        } else if (box.getYExtent() >= box.getZExtent()) {
+            axis = 1;
+        } else {
+            axis = 2;
+        }
+        geoms.subList(from, to).sort((a, b) -> Float.compare(
+                centerOnAxis(a.getWorldBound(), axis), centerOnAxis(b.getWorldBound(), axis)));
+
+        int mid = (from + to) >>> 1;
+        leftChild[node] = buildNode(geoms, from, mid);
+        rightChild[node] = buildNode(geoms, mid, to);
+        return node;
+    }
+
+    private static float centerOnAxis(BoundingVolume bv, int axis) {
+        return bv.getCenter().get(axis);
+    }
+}
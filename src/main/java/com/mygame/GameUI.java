@@ -1,6 +1,11 @@
 package com.mygame;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.jme3.asset.AssetInfo;
 import com.jme3.asset.AssetKey;
@@ -10,6 +15,7 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
 import javafx.scene.image.Image;
@@ -28,25 +34,54 @@ import javafx.scene.text.FontWeight;
 /**
  * manages the game UI.
  * features a main menu with a 3D parallax background.
+ *
+ * while playing the whole UI is taken out of the JavaFX scene, not just hidden: an empty scene
+ * has nothing dirty, so JavaFX doesn't lay out, render (in software with prism.order=sw) or
+ * copy a frame into the jME texture. it comes back when the settings are opened.
  */
 public class GameUI {
     
 
     private final Main app;
+    // everything between the JavaFX and the jME thread goes through here
+    private final UiCommandBridge bridge;
     private StackPane rootPane;
     private VBox mainMenuPane;
     private VBox settingsPane;
 
     // Parallax Layers
+    public static final String BACKGROUND = "Textures/background.png";
+    public static final String MIDDLEGROUND = "Textures/middleground.png";
+    public static final String FOREGROUND = "Textures/foreground.png";
     private ImageView bgLayer;
     private ImageView mgLayer;
     private ImageView fgLayer;
+    // the layers are a bit bigger than the window so moving them never shows an edge
+    private static final double LAYER_SCALE = 1.1;
+    // decoded layers by path and size. they're decoded at exactly the size they're shown at,
+    // so JavaFX never scales them, and switching resolutions back and forth doesn't decode again
+    private final Map<String, Image> layerCache = new ConcurrentHashMap<>();
+    // the window size the UI is laid out for, also read by the loader threads
+    private volatile int uiWidth, uiHeight;
+
+    // disabled until the asset loader is done
+    private Button btnNewGame;
+    private Label loadingLabel;
+    // the loader threads report out of order, the label only goes up
+    private final AtomicInteger loadingDone = new AtomicInteger();
 
     // ID, track the root node for cleanup
     private static final String ROOT_UI_ID = "GameUIRoot";
+    // false while playing, only used on the JavaFX thread
+    private boolean uiAttached = false;
+    // where the foreground parallax layer is, in whole pixels
+    private long lastShiftX = Long.MIN_VALUE, lastShiftY = Long.MIN_VALUE;
 
-    public GameUI(Main app) {
+    public GameUI(Main app, UiCommandBridge bridge) {
         this.app = app;
+        this.bridge = bridge;
+        uiWidth = app.getCamera().getWidth();
+        uiHeight = app.getCamera().getHeight();
     }
 
     public void initializeUI() {
@@ -67,18 +102,13 @@ public class GameUI {
         rootPane = new StackPane();
         rootPane.setId(ROOT_UI_ID);
 
-        // force the root pane to fill the entire JME window. fixes the fill problem
-        double screenWidth = app.getCamera().getWidth();
-        double screenHeight = app.getCamera().getHeight();
-        
-        rootPane.setPrefSize(screenWidth, screenHeight);
-        rootPane.setMinSize(screenWidth, screenHeight);
-        rootPane.setMaxSize(screenWidth, screenHeight);
-
         // initialize parallax layers (order matters for z-indexing)
-        bgLayer = createParallaxLayer("Textures/background.png");
-        mgLayer = createParallaxLayer("Textures/middleground.png");
-        fgLayer = createParallaxLayer("Textures/foreground.png");
+        bgLayer = createParallaxLayer();
+        mgLayer = createParallaxLayer();
+        fgLayer = createParallaxLayer();
+
+        // force the root pane to fill the entire JME window. fixes the fill problem
+        layoutForSize();
 
         // menu panes
         mainMenuPane = createMainMenuPane();
@@ -89,56 +119,172 @@ public class GameUI {
         // order: Back -> Middle -> Front -> UI
         rootPane.getChildren().addAll(bgLayer, mgLayer, fgLayer, mainMenuPane, settingsPane);
 
-        setupParallaxEffect();
+        attachUI();
+    }
 
+    /**
+     * puts the menu into the JavaFX scene and turns the parallax back on.
+     */
+    private void attachUI() {
+        if (uiAttached) {
+            return;
+        }
+        setupParallaxEffect();
         JavaFxUI.getInstance().attachChild(rootPane);
+        uiAttached = true;
     }
 
     /**
-     * creates an ImageView for screen menu
+     * takes the menu out of the JavaFX scene while playing. the mouse handler goes too,
+     * nothing in the UI reacts to anything until attachUI.
      */
-    private ImageView createParallaxLayer(String path) {
-        ImageView view = new ImageView();
-        try {
-            // sanitize path for JME
-            String jmePath = path.startsWith("/") ? path.substring(1) : path;
-
-            // attempt to find the files
-            AssetKey<Object> key = new AssetKey<>(jmePath);
-            AssetInfo info = app.getAssetManager().locateAsset(key);
-
-            if (info != null) {
-                // open a stream and pass it to JavaFX
-                try (InputStream stream = info.openStream()) {
-                    Image img = new Image(stream);
-                    view.setImage(img);
-                }
-            } else {
-                System.err.println("JME could not find asset: " + jmePath);
-            }
+    private void detachUI() {
+        if (!uiAttached) {
+            return;
+        }
+        JavaFxUI.getInstance().detachChild(ROOT_UI_ID);
+        rootPane.setOnMouseMoved(null);
+        uiAttached = false;
+    }
 
-            // bind dimensions
-            view.fitWidthProperty().bind(rootPane.widthProperty().multiply(1.1));
-            view.fitHeightProperty().bind(rootPane.heightProperty().multiply(1.1));
-            view.setPreserveRatio(false); 
+    /**
+     * the window changed size (fullscreen, resolution). the layers for the new size are decoded
+     * in the background, or come straight from the cache. can be called from any thread
+     */
+    public void resize(int width, int height) {
+        if (width == uiWidth && height == uiHeight) {
+            return;
+        }
+        uiWidth = width;
+        uiHeight = height;
+        // a window being dragged bigger resizes many times per frame, only the last size is laid out
+        bridge.runInUi(UiCommandBridge.Slot.LAYOUT, () -> {
+            if (rootPane == null) {
+                return; // buildUI hasn't run yet, it picks up the new size
+            }
+            layoutForSize();
+            for (String layer : new String[]{BACKGROUND, MIDDLEGROUND, FOREGROUND}) {
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        setLayerImage(layer, loadLayerImage(layer));
+                    } catch (IOException e) {
+                        System.err.println("Could not load " + layer + ": " + e.getMessage());
+                    }
+                });
+            }
+        });
+    }
 
-            // prevent infinite scaling Loop
-            // StackPane tries to grow to fit the child but the child tries to be 1.1x the StackPane
-            // tells the StackPane to suck it up and drop this node when calculating its own size
-            view.setManaged(false);
+    /**
+     * root pane and layers for uiWidth x uiHeight. fixed sizes, nothing is bound, so a layout
+     * pass or moving a layer never scales anything
+     */
+    private void layoutForSize() {
+        int width = uiWidth, height = uiHeight;
+        rootPane.setPrefSize(width, height);
+        rootPane.setMinSize(width, height);
+        rootPane.setMaxSize(width, height);
+
+        int layerWidth = layerWidth(width), layerHeight = layerHeight(height);
+        for (ImageView layer : new ImageView[]{bgLayer, mgLayer, fgLayer}) {
+            // only scales until the image for the new size is there
+            layer.setFitWidth(layerWidth);
+            layer.setFitHeight(layerHeight);
 
             // Since it is unmanaged, the StackPane won't center it automatically.
-            // We must manually bind X/Y to keep it centered: (ParentWidth - ImageWidth) / 2
-            view.layoutXProperty().bind(rootPane.widthProperty().subtract(view.fitWidthProperty()).divide(2));
-            view.layoutYProperty().bind(rootPane.heightProperty().subtract(view.fitHeightProperty()).divide(2));
-
-        } catch (Exception e) {
-            System.err.println("Failed to load layer: " + path);
-            e.printStackTrace();
+            // centered by hand, whole pixels: (ParentWidth - ImageWidth) / 2
+            layer.setLayoutX((width - layerWidth) / 2);
+            layer.setLayoutY((height - layerHeight) / 2);
         }
+    }
+
+    private static int layerWidth(int width) {
+        return (int) Math.round(width * LAYER_SCALE);
+    }
+
+    private static int layerHeight(int height) {
+        return (int) Math.round(height * LAYER_SCALE);
+    }
+
+    /**
+     * creates an ImageView for screen menu. the image itself is decoded by the asset loader
+     * and handed over later through setLayerImage
+     */
+    private ImageView createParallaxLayer() {
+        ImageView view = new ImageView();
+        view.setPreserveRatio(false); 
+
+        // prevent infinite scaling Loop
+        // StackPane tries to grow to fit the child but the child tries to be 1.1x the StackPane
+        // tells the StackPane to suck it up and drop this node when calculating its own size
+        view.setManaged(false);
         return view;
     }
 
+    /**
+     * decodes one of the parallax PNGs at the size the layers have for the current window.
+     * doesn't touch the scene graph, so it's safe to call from the asset loader threads
+     */
+    public Image loadLayerImage(String path) throws IOException {
+        int width = layerWidth(uiWidth), height = layerHeight(uiHeight);
+        String cacheKey = path + "@" + width + "x" + height;
+        Image cached = layerCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        // sanitize path for JME
+        String jmePath = path.startsWith("/") ? path.substring(1) : path;
+
+        // attempt to find the files
+        AssetInfo info = app.getAssetManager().locateAsset(new AssetKey<>(jmePath));
+        if (info == null) {
+            System.err.println("JME could not find asset: " + jmePath);
+            return null;
+        }
+        // open a stream and pass it to JavaFX, it scales while decoding (smooth, once)
+        try (InputStream stream = info.openStream()) {
+            Image image = new Image(stream, width, height, false, true);
+            if (!image.isError()) {
+                layerCache.put(cacheKey, image);
+            }
+            return image;
+        }
+    }
+
+    /**
+     * shows a decoded parallax image, can be called from any thread
+     */
+    public void setLayerImage(String path, Image image) {
+        bridge.runInUi(() -> {
+            // decoded for a size the window doesn't have anymore, the one for the new size is on its way
+            if (image != null && (image.getWidth() != layerWidth(uiWidth) || image.getHeight() != layerHeight(uiHeight))) {
+                return;
+            }
+            if (path.equals(BACKGROUND)) bgLayer.setImage(image);
+            else if (path.equals(MIDDLEGROUND)) mgLayer.setImage(image);
+            else if (path.equals(FOREGROUND)) fgLayer.setImage(image);
+        });
+    }
+
+    /**
+     * loading progress for the main menu, can be called from any thread.
+     * NEW GAME stays disabled until everything is loaded
+     */
+    public void setLoadingProgress(int done, int total) {
+        loadingDone.accumulateAndGet(done, Math::max);
+        bridge.runInUi(UiCommandBridge.Slot.LOADING_PROGRESS, () -> {
+            int shown = loadingDone.get();
+            if (shown >= total) {
+                loadingLabel.setVisible(false);
+                loadingLabel.setManaged(false);
+                btnNewGame.setDisable(false);
+            } else {
+                loadingLabel.setText("LOADING " + (100 * shown / Math.max(1, total)) + "%");
+            }
+        });
+    }
+
     /**
      * calculate movement for layer / mouse parallax
      */
@@ -166,6 +312,15 @@ public class GameUI {
             offsetX = Math.max(-1.0, Math.min(1.0, offsetX));
             offsetY = Math.max(-1.0, Math.min(1.0, offsetY));
 
+            // whole pixels of the foreground layer, the fastest one: below that nothing visibly
+            // moves, and every move makes JavaFX render and upload the whole frame again
+            long shiftX = Math.round(offsetX * 60), shiftY = Math.round(offsetY * 60);
+            if (shiftX == lastShiftX && shiftY == lastShiftY) {
+                return;
+            }
+            lastShiftX = shiftX;
+            lastShiftY = shiftY;
+
             // move layers
             shiftLayer(bgLayer, offsetX, offsetY, 15); // background
             shiftLayer(mgLayer, offsetX, offsetY, 30); // middle
@@ -181,8 +336,9 @@ public class GameUI {
         if (layer != null) {
             // use negative factor to make the layer move opposite to mouse (3D depth effect)
             // setTranslateX (absolute) NOT setTranslateX(getTranslateX()..)
-            layer.setTranslateX(-xFactor * strength);
-            layer.setTranslateY(-yFactor * strength);
+            // rounded, the software renderer doesn't have to resample the image between pixels
+            layer.setTranslateX(Math.round(-xFactor * strength));
+            layer.setTranslateY(Math.round(-yFactor * strength));
         }
     }
 
@@ -192,7 +348,8 @@ public class GameUI {
         menuColumn.prefHeightProperty().bind(rootPane.heightProperty());
         menuColumn.setStyle("-fx-padding: 0 0 0 50;");
 
-        Button btnNewGame = createStyledButton("NEW GAME");
+        btnNewGame = createStyledButton("NEW GAME");
+        btnNewGame.setDisable(true);
         Button btnLoadGame = createStyledButton("LOAD GAME");
         Button btnSettings = createStyledButton("SETTINGS");
         Button btnQuit = createStyledButton("QUIT");
@@ -202,7 +359,12 @@ public class GameUI {
         btnSettings.setOnAction(e -> showSettingsScreen(true));
         btnQuit.setOnAction(e -> app.stop());
 
+        loadingLabel = new Label("LOADING 0%");
+        loadingLabel.setFont(Font.font("Arial", FontWeight.BOLD, 16));
+        loadingLabel.setTextFill(Color.WHITE);
+
         menuColumn.getChildren().addAll(
+                loadingLabel,
                 createSpacer(10, "transparent"),
                 btnNewGame,
                 createSpacer(10, "transparent"),
@@ -239,23 +401,103 @@ public class GameUI {
             // Convert slider's 0-100 value to the 0.0-2.0f volume range
             float newVolume = newVal.floatValue() / 50.0f;
             // Call the setAmbientVolume method that now lives in Main.java
-            JavaFxUI.getInstance().runInJmeThread(() -> {
+            // (only the last value of a frame, it loops over every sound)
+            bridge.runInGame(UiCommandBridge.Slot.VOLUME, () -> {
                 app.setAmbientVolume(newVolume);
             });
         });
-        JavaFxUI.getInstance().runInJmeThread(() -> {
+        bridge.runInGame(UiCommandBridge.Slot.VOLUME, () -> {
             app.setAmbientVolume(75.0f / 50.0f); // 1.5f
         });
 
         CheckBox fullscreenCheck = new CheckBox("Enable Fullscreen");
+        fullscreenCheck.setSelected(app.getDisplayModes().isFullscreen());
         fullscreenCheck.setFont(Font.font("Arial", FontWeight.NORMAL, 16));
         fullscreenCheck.setStyle("-fx-text-fill: white;");
-        fullscreenCheck.setOnAction(e -> app.toggleFullscreen(fullscreenCheck.isSelected()));
+        fullscreenCheck.setOnAction(e -> {
+            boolean fullscreen = fullscreenCheck.isSelected();
+            bridge.runInGame(UiCommandBridge.Slot.DISPLAY_MODE, () -> app.toggleFullscreen(fullscreen));
+        });
+
+        Label resolutionLabel = new Label("Resolution:");
+        resolutionLabel.setFont(Font.font("Arial", FontWeight.NORMAL, 16));
+        resolutionLabel.setTextFill(Color.WHITE);
+
+        // what the monitor supports, switched without restarting the game
+        ChoiceBox<String> resolutionChoice = new ChoiceBox<>();
+        resolutionChoice.getItems().addAll(app.getDisplayModes().getResolutions());
+        resolutionChoice.setValue(uiWidth + "x" + uiHeight);
+        resolutionChoice.setOnAction(e -> {
+            String resolution = resolutionChoice.getValue();
+            bridge.runInGame(UiCommandBridge.Slot.RESOLUTION, () -> app.setResolution(resolution));
+        });
+
+        Label qualityLabel = new Label("Graphics Quality:");
+        qualityLabel.setFont(Font.font("Arial", FontWeight.NORMAL, 16));
+        qualityLabel.setTextFill(Color.WHITE);
+
+        // AUTO lets the QualityGovernor pick from the frame times, the rest are fixed
+        ChoiceBox<String> qualityChoice = new ChoiceBox<>();
+        qualityChoice.getItems().add("AUTO");
+        for (QualityGovernor.Preset preset : QualityGovernor.Preset.values()) {
+            qualityChoice.getItems().add(preset.name());
+        }
+        qualityChoice.setValue("AUTO");
+        qualityChoice.setOnAction(e -> {
+            String choice = qualityChoice.getValue();
+            bridge.runInGame(UiCommandBridge.Slot.QUALITY, () -> {
+                QualityGovernor governor = app.getQualityGovernor();
+                if (governor == null) {
+                    return; // still loading
+                }
+                if (choice.equals("AUTO")) {
+                    governor.setAuto(true);
+                } else {
+                    governor.setPreset(QualityGovernor.Preset.valueOf(choice));
+                }
+            });
+        });
+
+        Label ssaoLabel = new Label("Ambient Occlusion:");
+        ssaoLabel.setFont(Font.font("Arial", FontWeight.NORMAL, 16));
+        ssaoLabel.setTextFill(Color.WHITE);
+
+        // PRESET follows the graphics quality above
+        ChoiceBox<String> ssaoChoice = new ChoiceBox<>();
+        ssaoChoice.getItems().add("PRESET");
+        for (HalfResSSAOFilter.Quality quality : HalfResSSAOFilter.Quality.values()) {
+            ssaoChoice.getItems().add(quality.name());
+        }
+        ssaoChoice.setValue("PRESET");
+        ssaoChoice.setOnAction(e -> {
+            String choice = ssaoChoice.getValue();
+            bridge.runInGame(UiCommandBridge.Slot.SSAO, () -> {
+                QualityGovernor governor = app.getQualityGovernor();
+                if (governor != null) {
+                    governor.setSsaoQuality(choice.equals("PRESET") ? null : HalfResSSAOFilter.Quality.valueOf(choice));
+                }
+            });
+        });
+
+        Label renderModeLabel = new Label("Render Mode:");
+        renderModeLabel.setFont(Font.font("Arial", FontWeight.NORMAL, 16));
+        renderModeLabel.setTextFill(Color.WHITE);
+
+        // RETRO is the cheap vertex lit look for slow machines
+        ChoiceBox<String> renderModeChoice = new ChoiceBox<>();
+        renderModeChoice.getItems().addAll("PBR", "RETRO");
+        renderModeChoice.setValue("PBR");
+        renderModeChoice.setOnAction(e -> {
+            boolean retro = renderModeChoice.getValue().equals("RETRO");
+            bridge.runInGame(UiCommandBridge.Slot.RENDER_MODE, () -> app.setRetroMode(retro));
+        });
 
         Button btnBack = createStyledButton("BACK");
         btnBack.setOnAction(e -> showSettingsScreen(false));
 
-        settingsColumn.getChildren().addAll(title, volumeLabel, volumeSlider, fullscreenCheck, btnBack);
+        settingsColumn.getChildren().addAll(title, volumeLabel, volumeSlider, fullscreenCheck,
+                resolutionLabel, resolutionChoice, qualityLabel, qualityChoice, ssaoLabel, ssaoChoice,
+                renderModeLabel, renderModeChoice, btnBack);
         return settingsColumn;
     }
 
@@ -313,13 +555,13 @@ public class GameUI {
     }
 
     public void toggleSettings() {
-        JavaFxUI.getInstance().runInJavaFxThread(() -> {
-            if (rootPane.isVisible()) {
+        bridge.runInUi(() -> {
+            if (uiAttached) {
                 startGame();
             } else {
-                rootPane.setVisible(true);
+                attachUI();
                 showSettingsScreen(true);
-                JavaFxUI.getInstance().runInJmeThread(() -> {
+                bridge.runInGame(UiCommandBridge.Slot.CURSOR, () -> {
                     app.getInputManager().setCursorVisible(true);
                 });
             }
@@ -328,16 +570,14 @@ public class GameUI {
 
     private void startGame() {
         if (rootPane != null) {
-            rootPane.setVisible(false);
+            detachUI();
         }
-        JavaFxUI.getInstance().runInJmeThread(() -> {
+        bridge.runInGame(UiCommandBridge.Slot.CURSOR, () -> {
             app.getInputManager().setCursorVisible(false);
         });
     }
 
     public void cleanup() {
-        JavaFxUI.getInstance().runInJavaFxThread(() -> {
-            JavaFxUI.getInstance().detachChild(ROOT_UI_ID);
-        });
+        JavaFxUI.getInstance().runInJavaFxThread(this::detachUI);
     }
 }
\ No newline at end of file
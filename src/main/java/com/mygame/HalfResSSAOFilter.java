@@ -0,0 +1,161 @@
+package com.mygame;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.post.Filter;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.Renderer;
+import com.jme3.renderer.ViewPort;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.Texture;
+import java.util.ArrayList;
+
+/**
+ * SSAO that computes the occlusion at a lower resolution and scales it back up.
+ *
+ * jME's SSAOFilter always runs at full resolution with an extra normal pass over the whole
+ * scene. this one skips the normal pass (normals come from the depth buffer) and runs the
+ * occlusion on a quarter / half size buffer that also stores the linear depth. the upsample
+ * only mixes low res samples whose depth matches the pixel, so edges stay clean.
+ * the constructor takes the same values as SSAOFilter so it drops into the same slot.
+ */
+public class HalfResSSAOFilter extends Filter {
+
+    public enum Quality {
+        OFF(0), QUARTER(4), HALF(2), FULL(1);
+
+        final int divisor;
+
+        Quality(int divisor) {
+            this.divisor = divisor;
+        }
+    }
+
+    private float sampleRadius;
+    private float intensity;
+    private float scale;
+    private float bias;
+    private Quality quality = Quality.HALF;
+    private boolean dirty = false;
+
+    private Pass aoPass;
+    private Material aoMaterial;
+    private Renderer renderer;
+    private ViewPort viewPort;
+    private int screenWidth;
+    private int screenHeight;
+
+    private final Vector3f frustumCorner = new Vector3f();
+    private final Vector2f frustumNearFar = new Vector2f();
+
+    public HalfResSSAOFilter(float sampleRadius, float intensity, float scale, float bias) {
+        super("HalfResSSAOFilter");
+        this.sampleRadius = sampleRadius;
+        this.intensity = intensity;
+        this.scale = scale;
+        this.bias = bias;
+    }
+
+    /**
+     * can be changed at any time, the low res buffer is rebuilt on the next frame.
+     */
+    public void setQuality(Quality quality) {
+        if (quality == Quality.OFF) {
+            setEnabled(false);
+            this.quality = quality;
+            return;
+        }
+        setEnabled(true);
+        if (quality != this.quality) {
+            this.quality = quality;
+            dirty = true;
+        }
+    }
+
+    public Quality getQuality() {
+        return quality;
+    }
+
+    public void setSampleRadius(float sampleRadius) {
+        this.sampleRadius = sampleRadius;
+        if (aoMaterial != null) {
+            aoMaterial.setFloat("SampleRadius", sampleRadius);
+        }
+    }
+
+    public float getSampleRadius() {
+        return sampleRadius;
+    }
+
+    @Override
+    protected boolean isRequiresDepthTexture() {
+        return true;
+    }
+
+    @Override
+    protected Material getMaterial() {
+        return material;
+    }
+
+    @Override
+    protected void initFilter(AssetManager manager, RenderManager renderManager, ViewPort vp, int w, int h) {
+        renderer = renderManager.getRenderer();
+        viewPort = vp;
+        screenWidth = w;
+        screenHeight = h;
+
+        aoMaterial = new Material(manager, "MatDefs/HalfResSSAO.j3md");
+        aoMaterial.setFloat("SampleRadius", sampleRadius);
+        aoMaterial.setFloat("Intensity", intensity);
+        aoMaterial.setFloat("Scale", scale);
+        aoMaterial.setFloat("Bias", bias);
+        aoMaterial.setVector2("Resolution", new Vector2f(w, h));
+
+        material = new Material(manager, "MatDefs/HalfResSSAOUpsample.j3md");
+
+        aoPass = new Pass() {
+            @Override
+            public boolean requiresDepthAsTexture() {
+                return true;
+            }
+        };
+        postRenderPasses = new ArrayList<>();
+        postRenderPasses.add(aoPass);
+        initAoPass();
+        dirty = false;
+    }
+
+    private void initAoPass() {
+        // OFF still gets a (full size) buffer, the filter is disabled then anyway
+        int divisor = Math.max(1, quality.divisor);
+        int w = Math.max(1, screenWidth / divisor);
+        int h = Math.max(1, screenHeight / divisor);
+        aoPass.init(renderer, w, h, Format.RGBA16F, Format.Depth, 1, aoMaterial);
+        // the upsample does its own filtering
+        aoPass.getRenderedTexture().setMinFilter(Texture.MinFilter.NearestNoMipMaps);
+        aoPass.getRenderedTexture().setMagFilter(Texture.MagFilter.Nearest);
+        material.setTexture("SSAOMap", aoPass.getRenderedTexture());
+        material.setVector2("LowResolution", new Vector2f(w, h));
+    }
+
+    @Override
+    protected void preFrame(float tpf) {
+        if (dirty && quality != Quality.OFF) {
+            aoPass.cleanup(renderer);
+            initAoPass();
+            dirty = false;
+        }
+
+        Camera cam = viewPort.getCamera();
+        float farY = (cam.getFrustumTop() / cam.getFrustumNear()) * cam.getFrustumFar();
+        float farX = farY * ((float) screenWidth / screenHeight);
+        frustumCorner.set(farX, farY, cam.getFrustumFar());
+        frustumNearFar.set(cam.getFrustumNear(), cam.getFrustumFar());
+        aoMaterial.setVector3("FrustumCorner", frustumCorner);
+        aoMaterial.setVector2("FrustumNearFar", frustumNearFar);
+        material.setVector2("FrustumNearFar", frustumNearFar);
+    }
+}
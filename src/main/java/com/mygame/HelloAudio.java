@@ -2,7 +2,6 @@ package com.mygame;
 
 import com.jme3.app.Application;
 import com.jme3.audio.AudioNode;
-import com.jme3.audio.AudioData.DataType;
 import com.jme3.font.BitmapText;
 import com.jme3.font.BitmapFont;
 import com.jme3.math.Vector3f;
@@ -18,6 +17,8 @@ public class HelloAudio {
     private Node rootNode, guiNode;
     private Vector3f penguinPos = new Vector3f(0,0,0);
     private Spatial penguin;
+    private final AudioCache audioCache;
+    private final LodBaker lods;
     private AudioNode[] radios;
     private int currentRadio = 0;
     private float maxDistance = 20;
@@ -26,8 +27,10 @@ public class HelloAudio {
     private BitmapText helloText;
     private boolean textAttached = false;
 
-    public HelloAudio(Application app, Node rootNode, Node guiNode) {
+    public HelloAudio(Application app, Node rootNode, Node guiNode, AudioCache audioCache, LodBaker lods) {
         this.app = app;
+        this.lods = lods;
+        this.audioCache = audioCache;
         this.rootNode = rootNode;
         this.guiNode = guiNode;
 
@@ -36,7 +39,8 @@ public class HelloAudio {
 
     private void init() {
         // Load penguin model
-        penguin = app.getAssetManager().loadModel("Models/radioModel.glb");
+        // with LOD levels, far away it draws a reduced mesh
+        penguin = lods.load("Models/radioModel.glb");
         penguin.setLocalTranslation(penguinPos);
         rootNode.attachChild(penguin);
 
@@ -62,7 +66,7 @@ public class HelloAudio {
     }
 
     private AudioNode loadRadio(String path) {
-        AudioNode node = new AudioNode(app.getAssetManager(), path, DataType.Buffer);
+        AudioNode node = audioCache.createNode(path);
         node.setLooping(true);
         node.setPositional(false);
         node.setVolume(1f);
@@ -0,0 +1,254 @@
+package com.mygame;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.light.Light;
+import com.jme3.light.PointLight;
+import com.jme3.light.SpotLight;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * attaches lights only to the geometries they can actually reach instead of the whole rootNode.
+ * jME lights every geometry once per light in its light list (multipass), so a point light in
+ * the corner shouldn't cost anything on the other side of the room.
+ *
+ * geometries are put into a uniform grid by their world bound, a light looks up the cells its
+ * range covers and only tests those geometries. lights without a range (sun, ambient, probes)
+ * still go on the rootNode.
+ */
+public class LightAssigner {
+
+    private final Node rootNode;
+    private final float cellSize;
+
+    private final Map<Long, List<Geometry>> grid = new HashMap<>();
+    private final Set<Geometry> geometries = new HashSet<>();
+    private final List<Assignment> assignments = new ArrayList<>();
+    private final List<Light> globalLights = new ArrayList<>();
+
+    // reused while querying the grid
+    private final Set<Geometry> candidates = new HashSet<>();
+    private final BoundingSphere lightBound = new BoundingSphere();
+    private final Vector3f min = new Vector3f();
+    private final Vector3f max = new Vector3f();
+
+    public LightAssigner(Node rootNode, float cellSize) {
+        this.rootNode = rootNode;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * adds every geometry under the spatial to the grid. world bounds have to be up to date,
+     * so call updateGeometricState() on the root first. geometries already known are skipped,
+     * lights that were added before get assigned to the new geometries too.
+     */
+    public void addGeometries(Spatial spatial) {
+        List<Geometry> added = new ArrayList<>();
+        spatial.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                if (geom.getWorldBound() != null && geometries.add(geom)) {
+                    insert(geom);
+                    added.add(geom);
+                }
+            }
+        });
+
+        for (Assignment a : assignments) {
+            for (Geometry geom : added) {
+                if (geom.getWorldBound().intersects(a.bound)) {
+                    geom.addLight(a.light);
+                    a.targets.add(geom);
+                }
+            }
+        }
+    }
+
+    /**
+     * assigns the light to every geometry its range touches, or to the rootNode
+     * if it has no range.
+     */
+    public void addLight(Light light) {
+        if (!computeBound(light, lightBound)) {
+            rootNode.addLight(light);
+            globalLights.add(light);
+            return;
+        }
+        Assignment a = new Assignment(light);
+        assignments.add(a);
+        assign(a);
+    }
+
+    public void removeLight(Light light) {
+        if (globalLights.remove(light)) {
+            rootNode.removeLight(light);
+            return;
+        }
+        for (int i = 0; i < assignments.size(); i++) {
+            Assignment a = assignments.get(i);
+            if (a.light == light) {
+                unassign(a);
+                assignments.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * re-assigns lights that moved or changed range since the last call. static lights
+     * only cost a vector compare per frame.
+     */
+    public void update() {
+        for (Assignment a : assignments) {
+            if (!computeBound(a.light, lightBound)) {
+                continue;
+            }
+            if (a.bound.getCenter().equals(lightBound.getCenter()) && a.bound.getRadius() == lightBound.getRadius()) {
+                continue;
+            }
+            unassign(a);
+            assign(a);
+        }
+    }
+
+    /**
+     * average number of lights per geometry if every light sat on the rootNode.
+     */
+    public float getLightsPerGeometryBefore() {
+        return globalLights.size() + assignments.size();
+    }
+
+    /**
+     * average number of lights per geometry with the current assignment.
+     */
+    public float getLightsPerGeometryAfter() {
+        if (geometries.isEmpty()) {
+            return 0;
+        }
+        int local = 0;
+        for (Assignment a : assignments) {
+            local += a.targets.size();
+        }
+        return globalLights.size() + (float) local / geometries.size();
+    }
+
+    public void printStats() {
+        System.out.println("--- LIGHT ASSIGNMENT ---");
+        System.out.println("Geometries: " + geometries.size() + ", grid cells: " + grid.size());
+        System.out.println("Global lights: " + globalLights.size() + ", local lights: " + assignments.size());
+        System.out.printf("Lights per geometry: %.2f before, %.2f after%n",
+                getLightsPerGeometryBefore(), getLightsPerGeometryAfter());
+        System.out.println("------------------------");
+    }
+
+    private void assign(Assignment a) {
+        a.bound.setCenter(lightBound.getCenter());
+        a.bound.setRadius(lightBound.getRadius());
+
+        candidates.clear();
+        Vector3f c = lightBound.getCenter();
+        float r = lightBound.getRadius();
+        int x0 = cell(c.x - r), x1 = cell(c.x + r);
+        int y0 = cell(c.y - r), y1 = cell(c.y + r);
+        int z0 = cell(c.z - r), z1 = cell(c.z + r);
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                for (int z = z0; z <= z1; z++) {
+                    List<Geometry> list = grid.get(key(x, y, z));
+                    if (list != null) {
+                        candidates.addAll(list);
+                    }
+                }
+            }
+        }
+
+        for (Geometry geom : candidates) {
+            if (geom.getWorldBound().intersects(a.bound)) {
+                geom.addLight(a.light);
+                a.targets.add(geom);
+            }
+        }
+    }
+
+    private void unassign(Assignment a) {
+        for (Geometry geom : a.targets) {
+            geom.removeLight(a.light);
+        }
+        a.targets.clear();
+    }
+
+    private void insert(Geometry geom) {
+        BoundingVolume bv = geom.getWorldBound();
+        if (bv instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bv;
+            box.getMin(min);
+            box.getMax(max);
+        } else {
+            float r = ((BoundingSphere) bv).getRadius();
+            min.set(bv.getCenter()).subtractLocal(r, r, r);
+            max.set(bv.getCenter()).addLocal(r, r, r);
+        }
+
+        for (int x = cell(min.x); x <= cell(max.x); x++) {
+            for (int y = cell(min.y); y <= cell(max.y); y++) {
+                for (int z = cell(min.z); z <= cell(max.z); z++) {
+                    grid.computeIfAbsent(key(x, y, z), k -> new ArrayList<>()).add(geom);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the light reaches everything
+     */
+    private static boolean computeBound(Light light, BoundingSphere store) {
+        float range;
+        if (light instanceof PointLight) {
+            PointLight pl = (PointLight) light;
+            range = pl.getRadius();
+            store.setCenter(pl.getPosition());
+        } else if (light instanceof SpotLight) {
+            // sphere around the whole cone, a bit generous but cheap
+            SpotLight sl = (SpotLight) light;
+            range = sl.getSpotRange();
+            store.setCenter(sl.getPosition());
+        } else {
+            return false;
+        }
+        // 0 means infinite range in jME
+        if (range <= 0) {
+            return false;
+        }
+        store.setRadius(range);
+        return true;
+    }
+
+    private int cell(float v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+
+    private static class Assignment {
+        final Light light;
+        final BoundingSphere bound = new BoundingSphere();
+        final List<Geometry> targets = new ArrayList<>();
+
+        Assignment(Light light) {
+            this.light = light;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.mygame;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.control.LodControl;
+import com.jme3.scene.instancing.InstancedGeometry;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import jme3tools.optimize.LodGenerator;
+
+/**
+ * gives the imported props reduced meshes for when they're far away.
+ *
+ * the first time a model is loaded every mesh gets a few LOD levels from jME's LodGenerator
+ * (the index buffers are stored in the mesh itself) and a LodControl that picks the level
+ * from how big the geometry is on screen. the result is written as a j3o next to the
+ * collision shapes (see CacheFiles), named after a hash of the source file, so the next
+ * launch just loads it and a changed model is baked again. models that went through the
+ * AssetBaker already have their levels and skip all of this.
+ *
+ * load() is fine to call from the preloader threads.
+ */
+public class LodBaker {
+
+    // bump when the reduction settings change, so old files aren't picked up
+    private static final int FORMAT_VERSION = 1;
+    // share of triangles removed per level
+    private static final float[] REDUCTION = {0.5f, 0.75f, 0.9f};
+    // smaller meshes aren't worth it, the savings are less than an extra index buffer costs
+    private static final int MIN_TRIANGLES = 200;
+    // LodControl settings: how many triangles a pixel of screen area may have
+    private static final float TRIS_PER_PIXEL = 1f;
+    private static final float DIST_TOLERANCE = 1f;
+
+    private static final String SUFFIX = "lod.j3o";
+
+    private final AssetManager assetManager;
+    private final CacheFiles cache = new CacheFiles();
+
+    private final Map<String, Spatial> templates = new ConcurrentHashMap<>();
+
+    public LodBaker(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    /**
+     * the model with LOD levels and LodControls. every call returns a new copy that shares
+     * the meshes but has its own materials.
+     */
+    public Spatial load(String modelPath) {
+        Spatial template = templates.get(modelPath);
+        if (template == null) {
+            // baking takes a while, not inside computeIfAbsent where it would block the map.
+            // two threads asking for the same new model both bake it, the first one is kept
+            Spatial loaded = loadExisting(modelPath);
+            boolean baked = loaded == null;
+            if (baked) {
+                loaded = assetManager.loadModel(modelPath);
+                bakeLods(loaded);
+            }
+            template = templates.putIfAbsent(modelPath, loaded);
+            if (template == null) {
+                template = loaded;
+                // only the thread whose copy was kept writes the cache file
+                if (baked) {
+                    save(modelPath, template);
+                }
+            }
+        }
+        return template.clone(true);
+    }
+
+    /**
+     * puts a LodControl on a geometry whose mesh already has LOD levels, e.g. the
+     * InstancedGeometry that draws all copies of a prop in one chunk.
+     */
+    public static void attachLod(Geometry geom) {
+        if (geom.getMesh().getNumLodLevels() > 0 && geom.getControl(LodControl.class) == null) {
+            LodControl lod = new LodControl();
+            lod.setTrisPerPixel(TRIS_PER_PIXEL);
+            lod.setDistTolerance(DIST_TOLERANCE);
+            geom.addControl(lod);
+        }
+    }
+
+    /**
+     * triangles under root that weren't drawn in the last frame because a lower level was
+     * picked. parts that were culled don't count. doesn't allocate, the benchmark calls it every frame.
+     */
+    public static long getTrianglesSaved(Spatial root) {
+        if (root.getCullHint() == Spatial.CullHint.Always
+                || root.getLastFrustumIntersection() == Camera.FrustumIntersect.Outside) {
+            return 0;
+        }
+        if (root instanceof Node) {
+            Node node = (Node) root;
+            long saved = 0;
+            for (int i = 0; i < node.getQuantity(); i++) {
+                saved += getTrianglesSaved(node.getChild(i));
+            }
+            return saved;
+        }
+        if (!(root instanceof Geometry) || root.getControl(LodControl.class) == null) {
+            return 0;
+        }
+        Geometry geom = (Geometry) root;
+        Mesh mesh = geom.getMesh();
+        int level = geom.getLodLevel();
+        if (level == 0 || level >= mesh.getNumLodLevels()) {
+            return 0;
+        }
+        int copies = geom instanceof InstancedGeometry ? ((InstancedGeometry) geom).getActualNumInstances() : 1;
+        return (long) (mesh.getTriangleCount() - mesh.getTriangleCount(level)) * copies;
+    }
+
+    /**
+     * the baked j3o or the cached file, null when the model still has to be baked.
+     */
+    private Spatial loadExisting(String modelPath) {
+        // the asset baker already put the LOD levels into the baked j3o
+        String path = AssetBaker.resolve(assetManager, modelPath);
+        if (AssetBaker.isBaked(path)) {
+            return assetManager.loadModel(path);
+        }
+
+        File file = cacheFile(modelPath);
+        if (file != null && file.isFile()) {
+            try {
+                BinaryImporter importer = BinaryImporter.getInstance();
+                importer.setAssetManager(assetManager);
+                Spatial cached = (Spatial) importer.load(file);
+                System.out.println("LODs loaded from cache: " + file.getName());
+                return cached;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("LOD cache unreadable, baking again: " + file);
+                e.printStackTrace();
+                file.delete();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * adds LOD levels and LodControls to every mesh of the model that's big enough.
+     */
+    static void bakeLods(Spatial model) {
+        long start = System.nanoTime();
+        // meshes, full triangles, triangles at the lowest level
+        int[] counts = new int[3];
+        model.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                if (bake(geom)) {
+                    Mesh mesh = geom.getMesh();
+                    counts[0]++;
+                    counts[1] += mesh.getTriangleCount();
+                    counts[2] += mesh.getTriangleCount(mesh.getNumLodLevels() - 1);
+                }
+            }
+        });
+        System.out.printf("LODs baked for %s: %d meshes, %d -> %d triangles at the lowest level, %.1f ms%n",
+                model.getName(), counts[0], counts[1], counts[2], (System.nanoTime() - start) / 1e6);
+    }
+
+    private static boolean bake(Geometry geom) {
+        Mesh mesh = geom.getMesh();
+        if (mesh.getMode() != Mesh.Mode.Triangles || mesh.getNumLodLevels() > 0
+                || mesh.getTriangleCount() < MIN_TRIANGLES
+                || mesh.getBuffer(VertexBuffer.Type.Index) == null
+                // the generator doesn't know about bones or morph targets
+                || mesh.getBuffer(VertexBuffer.Type.BoneIndex) != null || mesh.hasMorphTargets()) {
+            return false;
+        }
+        try {
+            new LodGenerator(geom).bakeLods(LodGenerator.TriangleReductionMethod.PROPORTIONAL, REDUCTION);
+        } catch (RuntimeException e) {
+            System.err.println("LodBaker: could not reduce " + geom.getName() + ": " + e);
+            return false;
+        }
+        attachLod(geom);
+        return true;
+    }
+
+    private void save(String modelPath, Spatial model) {
+        File file = cacheFile(modelPath);
+        if (file == null) {
+            return;
+        }
+        try {
+            cache.prepare(modelPath, SUFFIX);
+            BinaryExporter.getInstance().save(model, file);
+            System.out.println("LODs cached: " + file);
+        } catch (IOException e) {
+            System.err.println("Could not write LOD cache " + file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * e.g. radioModel.1a2b3c4d5e6f7a8b.lod.j3o, null when the model can't be hashed
+     */
+    private File cacheFile(String modelPath) {
+        String hash = CacheFiles.fileHash(assetManager, modelPath, FORMAT_VERSION);
+        if (hash == null) {
+            System.err.println("LOD cache disabled for " + modelPath);
+            return null;
+        }
+        return cache.file(modelPath, hash, SUFFIX);
+    }
+}
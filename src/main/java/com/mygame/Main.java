@@ -7,53 +7,59 @@ import com.jme3.bullet.BulletAppState;
 import com.jme3.bullet.collision.shapes.CollisionShape;
 import com.jme3.bullet.control.BetterCharacterControl;
 import com.jme3.bullet.control.RigidBodyControl;
-import com.jme3.bullet.util.CollisionShapeFactory;
 import com.jme3.input.KeyInput;
-import com.jme3.input.MouseInput;
 import com.jme3.input.controls.ActionListener;
-import com.jme3.input.controls.AnalogListener;
 import com.jme3.input.controls.KeyTrigger;
-import com.jme3.input.controls.MouseAxisTrigger;
 import com.jme3.light.DirectionalLight;
 import com.jme3.light.Light;
-import com.jme3.light.PointLight;
-import com.jme3.light.SpotLight;
-import com.jme3.material.Material;
-import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
 import com.jme3.math.Vector3f;
 import com.jme3.post.FilterPostProcessor;
 import com.jme3.post.filters.BloomFilter;
 import com.jme3.post.filters.DepthOfFieldFilter;
 import com.jme3.post.filters.FXAAFilter;
 import com.jme3.post.filters.ToneMapFilter;
-import com.jme3.post.ssao.SSAOFilter;
 import com.jme3.renderer.RenderManager;
 import com.jme3.scene.Node;
 import com.jme3.scene.SceneGraphVisitorAdapter;
 import com.jme3.scene.Spatial;
-import com.jme3.shadow.DirectionalLightShadowRenderer;
-import com.jme3.shadow.EdgeFilteringMode;
 import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import com.jme3.texture.plugins.ktx.KTXLoader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-import com.jme3.material.RenderState;
-import com.jme3.renderer.queue.RenderQueue;
-import com.jme3.scene.Geometry;
-
-import com.jme3.shadow.PointLightShadowRenderer;
-import com.jme3.shadow.SpotLightShadowRenderer;
 
 public class Main extends SimpleApplication {
+
+    private static final String OFFICE_SCENE = "Scenes/OfficeScene.j3o";
+    // OFFICE_SCENE or its baked version
+    private String officeScenePath;
+    static final String RADIO_MODEL = "Models/radioModel.glb";
+    static final String CHAIR_MODEL = "Models/chairModel.glb";
+    static final String[] RADIO_TRACKS = {
+        "Sounds/radio/mono_radio1.wav",
+        "Sounds/radio/mono_radio2.wav",
+        "Sounds/radio/mono_radio3.wav",
+        "Sounds/radio/mono_radio4.wav"
+    };
+
+    private AssetPreloader preloader;
+    // false until onAssetsLoaded has built the scene
+    private boolean sceneReady = false;
     
     private BulletAppState bulletAppState;
+    private CollisionShapeCache shapeCache;
+    // MESH is exact, HULLS / BOXES are cheaper for BetterCharacterControl but only fit convex props
+    private CollisionShapeCache.ShapeMode officeShapeMode = CollisionShapeCache.ShapeMode.MESH;
     private BetterCharacterControl playerControl;
     private Node playerNode;
-    private Vector3f walkDirection = new Vector3f();
-    private boolean left = false, right = false, up = false, down = false;
+    private PlayerController playerController;
     
-    private GameUI gameUI; 
-    private float mouseSensitivity = 1.0f;
+    private GameUI gameUI;
+    private UiCommandBridge uiBridge;
+    private DisplayModeManager displayModes;
 
     // store the sun here if we find one to cast shadows (probably wont be needed at all)
     private DirectionalLight mainSun;
@@ -61,14 +67,22 @@ public class Main extends SimpleApplication {
     // for those who dont know, a cubemap will need to be generated for shadows every frame on the GPU,
     // since this game runs at 2K+ FPS on a decent graphics card, I think its fine
 
+    private ShadowScheduler shadowScheduler;
+    private LightAssigner lightAssigner;
+
     private com.jme3.post.filters.DepthOfFieldFilter dofFilter;
     private float currentFocusDist = 50f;
+    private QualityGovernor qualityGovernor;
+    private DynamicResolution dynamicResolution;
+    private FocusPicker focusPicker;
     
     // list to store all sounds to change their volume
     public List<AudioNode> allSounds = new ArrayList<>();
     
     //Sound
     private Sound audioManager;
+    // shared decoded clips and the radio streams
+    private AudioCache audioCache;
     public float masterVolume = 1.75f;
     
     //Timer
@@ -76,13 +90,50 @@ public class Main extends SimpleApplication {
     
     //Door Exit
     private DoorExit doorExit;
+    private ProximityTriggers proximityTriggers;
+    private PropInstancer props;
+    // swaps the scene to RetroShader for the low cost render mode
+    private ScenePolisher scenePolisher;
+    private LodBaker lods;
     
-
-    
+    // only set when started with --benchmark
+    private BenchmarkState benchmark;
+    // only set when started with --determinism-check
+    private DeterminismCheck determinismCheck;
+    // only set when started with --allocation-check
+    private AllocationCheck allocationCheck;
+    // no window, no audio, no JavaFX (benchmark, determinism and allocation check)
+    private boolean headless = false;
+
+    // physics steps in fixed steps on its own thread while the frame renders, the player and
+    // camera are interpolated between the steps (PlayerController)
+    static final float PHYSICS_STEP = 1f / 60f;
+    // a frame slower than this many steps drops the rest instead of spiraling
+    private static final int PHYSICS_MAX_SUB_STEPS = 4;
+    static final Vector3f PLAYER_SPAWN = new Vector3f(0.1f, 6f, 1.1f);
 
     public static void main(String[] args) {
+        // --benchmark [--benchmark-frames=N] [--benchmark-warmup=N] [--benchmark-out=file.json] [--benchmark-retro]
+        // --determinism-check
+        // --allocation-check
+        boolean benchmarkMode = false;
+        boolean determinismMode = false;
+        boolean allocationMode = false;
+        int benchmarkFrames = 1800;
+        int benchmarkWarmup = 300;
+        String benchmarkOut = "build/benchmark/frame-times.json";
+        boolean benchmarkRetro = false;
+        for (String arg : args) {
+            if (arg.equals("--benchmark")) benchmarkMode = true;
+            else if (arg.startsWith("--benchmark-frames=")) benchmarkFrames = Integer.parseInt(arg.substring(19));
+            else if (arg.startsWith("--benchmark-warmup=")) benchmarkWarmup = Integer.parseInt(arg.substring(19));
+            else if (arg.startsWith("--benchmark-out=")) benchmarkOut = arg.substring(16);
+            else if (arg.equals("--benchmark-retro")) benchmarkRetro = true;
+            else if (arg.equals("--determinism-check")) determinismMode = true;
+            else if (arg.equals("--allocation-check")) allocationMode = true;
+        }
 
-        if (System.getProperty("os.name").toLowerCase().contains("linux")) { //ew linux
+        if (!benchmarkMode && !determinismMode && !allocationMode && System.getProperty("os.name").toLowerCase().contains("linux")) { //ew linux
             configureLinuxCompatibility();
         }
 
@@ -93,6 +144,25 @@ public class Main extends SimpleApplication {
         settings.setGammaCorrection(true); // required for PBR textures
         settings.setTitle("Bunker");
         settings.setResolution(1280, 720);
+
+        if (benchmarkMode || determinismMode || allocationMode) {
+            // no window, no GPU, no sound card: CI boxes. runs as fast as it can
+            if (benchmarkMode) {
+                app.benchmark = new BenchmarkState(benchmarkWarmup, benchmarkFrames, benchmarkOut, benchmarkRetro);
+            } else if (determinismMode) {
+                app.determinismCheck = new DeterminismCheck();
+            } else {
+                app.allocationCheck = new AllocationCheck();
+            }
+            app.headless = true;
+            settings.setAudioRenderer(null);
+            settings.setFrameRate(-1);
+            settings.setVSync(false);
+            app.setShowSettings(false);
+            app.setSettings(settings);
+            app.start(JmeContext.Type.Headless);
+            return;
+        }
         
         app.setSettings(settings);
         app.start();
@@ -100,69 +170,183 @@ public class Main extends SimpleApplication {
 
     @Override
     public void simpleInitApp() {
-        // physics pre-setup
+        // first state, so it sees the start of every frame
+        if (benchmark != null) {
+            stateManager.attach(benchmark);
+        }
+        if (determinismCheck != null) {
+            stateManager.attach(determinismCheck);
+        }
+        if (allocationCheck != null) {
+            stateManager.attach(allocationCheck);
+        }
+
+        // physics pre-setup. PARALLEL steps the physics on its own thread while the frame renders,
+        // anything that touches the physics space has to happen outside of render()
         bulletAppState = new BulletAppState();
+        bulletAppState.setThreadingType(BulletAppState.ThreadingType.PARALLEL);
         stateManager.attach(bulletAppState);
         
         // camera setup
         flyCam.setEnabled(false); 
         cam.setFrustumPerspective(45f, (float)cam.getWidth() / cam.getHeight(), 0.01f, 1000f);
         
+        // the menu comes up first so it can show the loading progress
+        if (!headless) {
+            // commands between the JavaFX and jME threads, coalesced and run once per frame
+            uiBridge = new UiCommandBridge();
+            stateManager.attach(uiBridge);
+            // fullscreen / resolution in place, asks the monitor for its modes (jME thread only)
+            displayModes = new DisplayModeManager(this, settings);
+            gameUI = new GameUI(this, uiBridge); 
+            gameUI.initializeUI();
+        }
+
+        // baked assets (gradle :assets:bakeAssets) when they're there, the sources otherwise
+        assetManager.registerLoader(KTXLoader.class, "ktx");
+        officeScenePath = AssetBaker.resolve(assetManager, OFFICE_SCENE);
+
+        // everything heavy loads in parallel, the scene is put together in onAssetsLoaded
+        preloader = new AssetPreloader(this);
+        preloader.add(OFFICE_SCENE, () -> assetManager.loadModel(officeScenePath));
+        // the props get their LOD levels while loading (or read them from the cache)
+        lods = new LodBaker(assetManager);
+        preloader.add(RADIO_MODEL, () -> lods.load(RADIO_MODEL));
+        preloader.add(CHAIR_MODEL, () -> lods.load(CHAIR_MODEL));
+        if (!headless) {
+            for (String layer : new String[]{GameUI.BACKGROUND, GameUI.MIDDLEGROUND, GameUI.FOREGROUND}) {
+                preloader.add(layer, () -> {
+                    javafx.scene.image.Image image = gameUI.loadLayerImage(layer);
+                    gameUI.setLayerImage(layer, image);
+                    return image;
+                });
+            }
+        }
+        preloader.start((done, total, asset) -> {
+            if (gameUI != null) {
+                gameUI.setLoadingProgress(done, total);
+            }
+        }, this::onAssetsLoaded);
+    }
+
+    /**
+     * runs on the render thread once the preloader is done, builds the actual scene.
+     */
+    private void onAssetsLoaded() {
         // loading scene and applying filters and transperancy pass
-        Spatial officeScene = assetManager.loadModel("Scenes/OfficeScene.j3o");
+        Spatial officeScene = preloader.get(OFFICE_SCENE);
+        if (officeScene == null) {
+            // preloading failed, try once more here so the error shows up where it happens
+            officeScene = assetManager.loadModel(officeScenePath);
+        }
         rootNode.attachChild(officeScene);
-        TextureUtils.setNearestFilter(officeScene);
-        fixTransparency(officeScene);
+        // filters, transparency and the lights in one pass over the scene.
+        // the baked scene already has its filters (and mip maps)
+        ScenePreprocessor preprocessor = new ScenePreprocessor(ForkJoinPool.commonPool());
+        preprocessor.setNearestFilter(!AssetBaker.isBaked(officeScenePath));
+        preprocessor.process(officeScene);
+        preprocessor.printStats();
         // extract and apply lights
-        extractLightsFromScene(officeScene);
+        extractLightsFromScene(preprocessor.getLights());
+        // fewer draw calls: merge static geometry per material, back face culling where it's safe
+        if (officeScene instanceof Node) {
+            SceneOptimizer optimizer = new SceneOptimizer(8f);
+            optimizer.optimize((Node) officeScene);
+            optimizer.printStats();
+        }
+        // enter / exit zones for the interactables, replaces their own distance checks
+        proximityTriggers = new ProximityTriggers(cam, 8f);
+        stateManager.attach(proximityTriggers);
+
+        // repeated props (chairs, radios, ...) are drawn instanced, one InstancedNode per chunk.
+        // placed here and not in Sound so the benchmark has them too
+        props = new PropInstancer(lods, rootNode, 8f);
+        props.place(RADIO_MODEL, new Transform(Sound.RADIO_POS));
+        props.place(CHAIR_MODEL, new Transform(Sound.CHAIR_POS));
+
+        // shared decoded clips and radio streams (no audio renderer in the headless benchmark)
+        if (!headless) {
+            audioCache = new AudioCache(assetManager, audioRenderer);
+        }
         // enable sound
                      //initAudio(officeScene);
-        audioManager = new Sound(this, rootNode, guiNode);
+        // (no audio renderer in the headless benchmark)
+        // the models are in the asset cache by now, the radio tracks are streamed by the audio cache
+        if (!headless) {
+            audioManager = new Sound(this, rootNode, guiNode, audioCache, proximityTriggers);
+        }
         
         //Timer
         timer = new Timer(this, guiNode);
 
         //Door Exited
-        doorExit = new DoorExit(this, guiNode, new Vector3f(2, 0, -8));
+        doorExit = new DoorExit(this, guiNode, proximityTriggers, new Vector3f(2, 0, -8));
+
+        // lights only on the geometries they reach, once all the props are in
+        assignLights();
+
+        // autofocus picking, built once over the static scene
+        focusPicker = new FocusPicker();
+        focusPicker.build(rootNode);
+
+        // fixed step, the same one the PlayerController interpolates with
+        bulletAppState.getPhysicsSpace().setAccuracy(PHYSICS_STEP);
+        bulletAppState.getPhysicsSpace().setMaxSubSteps(PHYSICS_MAX_SUB_STEPS);
 
         // enable physics colissions for the room
-        CollisionShape officeShape = CollisionShapeFactory.createMeshShape(officeScene);
-        RigidBodyControl officePhys = new RigidBodyControl(officeShape, 0); 
-        officeScene.addControl(officePhys);
-        bulletAppState.getPhysicsSpace().add(officePhys); 
+        // the shape comes from the disk cache, if the scene changed it's rebuilt in the background
+        // and physics stays paused until it's there (so the player doesn't fall through the floor)
+        Spatial office = officeScene;
+        shapeCache = new CollisionShapeCache(assetManager);
+        CollisionShape officeShape = shapeCache.loadCached(OFFICE_SCENE, office, officeShapeMode);
+        if (officeShape != null) {
+            attachOfficePhysics(office, officeShape);
+        } else {
+            bulletAppState.setEnabled(false);
+            shapeCache.rebuildInBackground(OFFICE_SCENE, office, officeShapeMode, this, shape -> {
+                attachOfficePhysics(office, shape);
+                bulletAppState.setEnabled(true);
+            });
+        }
         
+        // low cost render mode, off until it's picked in the settings (or by the benchmark)
+        scenePolisher = new ScenePolisher(assetManager);
+
         // setup and enable player movement
         setupPlayer();
         setupKeys();
 
+        // everything that needs it is attached now, the cache keeps what's still in use
+        preloader.release();
+        sceneReady = true;
+
+        // the benchmark only measures the CPU side, there is nothing to render to and no JavaFX
+        if (headless) {
+            return;
+        }
+
         // post processing pass
         setupVisuals();
-        
-        // run the UI
-        gameUI = new GameUI(this); 
-        gameUI.initializeUI();
-        
     }
 
-    private void extractLightsFromScene(Spatial sceneModel) {
+    private void attachOfficePhysics(Spatial officeScene, CollisionShape officeShape) {
+        RigidBodyControl officePhys = new RigidBodyControl(officeShape, 0); 
+        officeScene.addControl(officePhys);
+        bulletAppState.getPhysicsSpace().add(officePhys); 
+        focusPicker.setPhysicsTarget(bulletAppState.getPhysicsSpace(), officePhys);
+    }
+
+    private void extractLightsFromScene(List<Light> lights) {
         // clear list when the scene is reloaded
         allSceneLights.clear(); 
-
-        sceneModel.breadthFirstTraversal(new SceneGraphVisitor() {
-            @Override
-            public void visit(Spatial spatial) {
-                for (Light light : spatial.getLocalLightList()) {
-                    allSceneLights.add(light);
-                }
-            }
-        });
+        // already taken off the nodes they came with by the ScenePreprocessor,
+        // the LightAssigner puts them back only where they're needed (see assignLights)
+        allSceneLights.addAll(lights);
 
         System.out.println("--- LIGHTS FOUND & ENABLED ---");
         for (Light light : allSceneLights) {
             System.out.println("Loaded: " + light.getName() + " [" + light.getClass().getSimpleName() + "]");
             
-            rootNode.addLight(light);
-            
             // even though we render shadows for all lights, still identify the sun seperate
             if (light instanceof DirectionalLight && mainSun == null) {
                 mainSun = (DirectionalLight) light;
@@ -171,42 +355,32 @@ public class Main extends SimpleApplication {
         System.out.println("-----------------------------");
     }
 
+    private void assignLights() {
+        // world bounds need to be current before they go into the grid
+        rootNode.updateGeometricState();
+        lightAssigner = new LightAssigner(rootNode, 4f);
+        lightAssigner.addGeometries(rootNode);
+        for (Light light : allSceneLights) {
+            lightAssigner.addLight(light);
+        }
+        lightAssigner.printStats();
+    }
+
     private void setupVisuals() {
         
-        // loop through lights and add shadows
+        // shadows for every light, but only the important ones re-render their shadow maps each frame
+        // (point lights render 6 times per refresh, one of the reasons the res is set so low)
+        shadowScheduler = new ShadowScheduler(assetManager, viewPort);
         for (Light light : allSceneLights) {
-            
-            // directional light (the sun)
-            if (light instanceof DirectionalLight) {
-                DirectionalLightShadowRenderer dlsr = new DirectionalLightShadowRenderer(assetManager, 2048, 3);
-                dlsr.setLight((DirectionalLight) light);
-                dlsr.setEdgeFilteringMode(EdgeFilteringMode.PCFPOISSON); 
-                viewPort.addProcessor(dlsr);
-            } 
-            
-            // spot lights (flashlight)
-            else if (light instanceof SpotLight) {
-                SpotLightShadowRenderer slsr = new SpotLightShadowRenderer(assetManager, 2048);
-                slsr.setLight((SpotLight) light);
-                slsr.setEdgeFilteringMode(EdgeFilteringMode.PCFPOISSON); 
-                viewPort.addProcessor(slsr);
-            }
-            
-            // point lights (lamp / ceiling light)
-            // this is the expensive (renders 6 times per light), one of the reasons the res is set so low
-            else if (light instanceof PointLight) {
-                PointLightShadowRenderer plsr = new PointLightShadowRenderer(assetManager, 512);
-                plsr.setLight((PointLight) light);
-                plsr.setEdgeFilteringMode(EdgeFilteringMode.PCFPOISSON); 
-                viewPort.addProcessor(plsr);
-            }
+            shadowScheduler.addLight(light);
         }
+        stateManager.attach(shadowScheduler);
 
         // post processing filters (SSAO, Bloom, etc.)
         FilterPostProcessor fpp = new FilterPostProcessor(assetManager);
 
-        // SSAO
-        SSAOFilter ssao = new SSAOFilter(6.0f, 10f, 1.0f, 0.1f);
+        // SSAO, the resolution it runs at comes from the QualityGovernor
+        HalfResSSAOFilter ssao = new HalfResSSAOFilter(6.0f, 10f, 1.0f, 0.1f);
         fpp.addFilter(ssao);
 
         // Bloom
@@ -229,8 +403,17 @@ public class Main extends SimpleApplication {
         // FXAA
         FXAAFilter fxaa = new FXAAFilter();
         fpp.addFilter(fxaa);
+        // DynamicResolution below puts it on the view, after the offscreen buffer
 
-        viewPort.addProcessor(fpp);
+        // steps the filters down on slow machines, starts at the settings above (ULTRA)
+        qualityGovernor = new QualityGovernor(viewPort, fpp, ssao, bloom, dofFilter, fxaa);
+        stateManager.attach(qualityGovernor);
+
+        // the 3D view drops its resolution before the frame time goes over 60 fps, gui stays sharp
+        dynamicResolution = new DynamicResolution(viewPort, fpp);
+        stateManager.attach(dynamicResolution);
+        // it goes first, the governor only changes the filters once the resolution can't help
+        qualityGovernor.setDynamicResolution(dynamicResolution);
         
         renderManager.setAlphaToCoverage(true);
     }
@@ -242,7 +425,11 @@ public class Main extends SimpleApplication {
         bulletAppState.getPhysicsSpace().add(playerControl);
         rootNode.attachChild(playerNode);
         
-        playerControl.warp(new Vector3f(0.1f, 6f, 1.1f));
+        playerControl.warp(PLAYER_SPAWN);
+
+        // movement, mouse look and camera follow
+        playerController = new PlayerController(cam, playerNode, playerControl, PHYSICS_STEP);
+        stateManager.attach(playerController);
     }
     
         /**
@@ -258,106 +445,51 @@ public class Main extends SimpleApplication {
     }
 
     private void setupKeys() { // author: random dude on reddit, thanks for the movement code!
+        // the movement and look mappings live in PlayerController
         inputManager.deleteMapping(SimpleApplication.INPUT_MAPPING_EXIT);
-        inputManager.addMapping("Left", new KeyTrigger(KeyInput.KEY_A));
-        inputManager.addMapping("Right", new KeyTrigger(KeyInput.KEY_D));
-        inputManager.addMapping("Up", new KeyTrigger(KeyInput.KEY_W));  
-        inputManager.addMapping("Down", new KeyTrigger(KeyInput.KEY_S));
         inputManager.addMapping("ToggleSettings", new KeyTrigger(KeyInput.KEY_ESCAPE));
-
-        inputManager.addMapping("RotateLeft", new MouseAxisTrigger(MouseInput.AXIS_X, true));
-        inputManager.addMapping("RotateRight", new MouseAxisTrigger(MouseInput.AXIS_X, false));
-        inputManager.addMapping("LookUp", new MouseAxisTrigger(MouseInput.AXIS_Y, false));
-        inputManager.addMapping("LookDown", new MouseAxisTrigger(MouseInput.AXIS_Y, true));
-
-        inputManager.addListener(actionListener, "Left", "Right", "Up", "Down", "ToggleSettings");
-        inputManager.addListener(analogListener, "RotateLeft", "RotateRight", "LookUp", "LookDown");
+        inputManager.addListener(actionListener, "ToggleSettings");
     }
 
     private final ActionListener actionListener = new ActionListener() {
         @Override
         public void onAction(String name, boolean isPressed, float tpf) {
-            if (name.equals("Left")) left = isPressed;
-            if (name.equals("Right")) right = isPressed;
-            if (name.equals("Up")) up = isPressed;
-            if (name.equals("Down")) down = isPressed;
-            if (name.equals("ToggleSettings") && !isPressed) {
+            if (name.equals("ToggleSettings") && !isPressed && gameUI != null) {
                 gameUI.toggleSettings();
             }
         }
     };
 
-    private final AnalogListener analogListener = new AnalogListener() {
-        @Override
-        public void onAnalog(String name, float value, float tpf) {
-            if (inputManager.isCursorVisible()) return;
-
-            if (name.equals("RotateLeft")) rotatePlayer(value * mouseSensitivity, Vector3f.UNIT_Y);
-            if (name.equals("RotateRight")) rotatePlayer(-value * mouseSensitivity, Vector3f.UNIT_Y);
-            if (name.equals("LookUp")) rotateCamera(-value * mouseSensitivity);
-            if (name.equals("LookDown")) rotateCamera(value * mouseSensitivity);
-        }
-    };
-
-    private void rotatePlayer(float value, Vector3f axis) {
-        Quaternion rotate = new Quaternion().fromAngleAxis(value, axis);
-        playerNode.rotate(rotate);
-        playerControl.setViewDirection(playerNode.getLocalRotation().mult(Vector3f.UNIT_Z));
-    }
-
-    private void rotateCamera(float value) {
-        Quaternion pitch = new Quaternion().fromAngleAxis(value, Vector3f.UNIT_X);
-        cam.getRotation().multLocal(pitch);
-    }
-
     @Override
     public void simpleUpdate(float tpf) {
-        // 1. Movement Logic (Your existing code)
-        Vector3f nodeDir = playerNode.getLocalRotation().mult(Vector3f.UNIT_Z);
-        Vector3f nodeLeft = playerNode.getLocalRotation().mult(Vector3f.UNIT_X);
-        
-        walkDirection.set(0, 0, 0);
-        if (left) walkDirection.addLocal(nodeLeft);
-        if (right) walkDirection.addLocal(nodeLeft.negate());
-        if (up) walkDirection.addLocal(nodeDir);
-        if (down) walkDirection.addLocal(nodeDir.negate());
-        
-        walkDirection.y = 0; 
-        playerControl.setWalkDirection(walkDirection.mult(5f)); 
+        // still loading, the menu is up and there's nothing to update yet
+        if (!sceneReady) {
+            return;
+        }
 
-        cam.setLocation(playerNode.getWorldTranslation().add(0, 5.3f, 0));
-        
-        // 2. Camera Sync (Your existing code)
-        float[] angles = new float[3];
-        playerNode.getLocalRotation().toAngles(angles);
-        float[] camAngles = new float[3];
-        cam.getRotation().toAngles(camAngles);
-        Quaternion currentCamRot = new Quaternion().fromAngles(camAngles[0], angles[1], 0);
-        cam.setRotation(currentCamRot);
+        // moves lights that changed position since last frame to their new geometries
+        lightAssigner.update();
+
+        // 1. + 2. Movement happens in PlayerController once per physics step, the camera follows
+        // the interpolated player node after this (a control on the player node)
 
         // 3. AUTO-FOCUS LOGIC (New)
-        if (dofFilter != null) {
-            // Create a Ray from camera position, pointing forward
-            com.jme3.math.Ray ray = new com.jme3.math.Ray(cam.getLocation(), cam.getDirection());
-            com.jme3.collision.CollisionResults results = new com.jme3.collision.CollisionResults();
-            
-            // Check what the ray hits in the scene
-            rootNode.collideWith(ray, results);
+        // Cast a ray from the camera forward (BVH over the static scene, throttled)
+        float dist = focusPicker.pick(cam);
 
-            float targetDist = 100f; // Default to far away if we look at the sky
-            
-            if (results.size() > 0) {
-                // Get distance to the closest object
-                float dist = results.getClosestCollision().getDistance();
-                // Clamp min distance to 1.0f so we don't focus INSIDE our own eyeball
-                targetDist = Math.max(0.5f, dist); 
-            }
+        float targetDist = 100f; // Default to far away if we look at the sky
+        
+        if (dist >= 0) {
+            // Clamp min distance to 1.0f so we don't focus INSIDE our own eyeball
+            targetDist = Math.max(0.5f, dist); 
+        }
 
-            // Smoothly transition focus (Lerp)
-            // '10f * tpf' determines the speed of the eye adaptation
-            float focusSpeed = 10f * tpf; 
-            currentFocusDist = com.jme3.math.FastMath.interpolateLinear(focusSpeed, currentFocusDist, targetDist);
+        // Smoothly transition focus (Lerp)
+        // '10f * tpf' determines the speed of the eye adaptation
+        float focusSpeed = 10f * tpf; 
+        currentFocusDist = com.jme3.math.FastMath.interpolateLinear(focusSpeed, currentFocusDist, targetDist);
 
+        if (dofFilter != null) {
             // Apply to filter
             dofFilter.setFocusDistance(currentFocusDist);
             
@@ -366,93 +498,77 @@ public class Main extends SimpleApplication {
             // When looking far away (Landscape), the range of sharpness is huge.
             // This math simulates that physics behavior:
             dofFilter.setFocusRange(Math.max(5f, currentFocusDist * 2.0f));
+        }
 
+        // no listener without an audio renderer (headless)
+        if (listener != null) {
             listener.setLocation(cam.getLocation());
             listener.setRotation(cam.getRotation());
-            
-            
-            //SOUND  
-            if (audioManager != null) {
-            audioManager.update(tpf);
-            
-            timer.update(tpf);
-            doorExit.update(tpf);
-            
-            //FOR TIMER
-            if (doorExit.exitedDoor) {
-                timer.exitedDoor =  true; //same as timer instance
-            }
+        }
+        
+        // the radio and the door react to ProximityTriggers, no polling here
+        timer.update(tpf);
+        
+        //FOR TIMER
+        if (doorExit.exitedDoor) {
+            timer.exitedDoor =  true; //same as timer instance
         }
 
+        if (benchmark != null) {
+            benchmark.markUpdateDone();
         }
     }
     
-    private void fixTransparency(Spatial spatial) {
-        spatial.breadthFirstTraversal(new SceneGraphVisitor() {
-            @Override
-            public void visit(Spatial spatial) {
-                if (spatial instanceof Geometry) {
-                    Geometry geom = (Geometry) spatial;
-                    Material mat = geom.getMaterial();
-                    
-                    // 1. Enable Alpha Discard (The Magic Fix)
-                    // If a pixel's alpha is lower than 0.5, the GPU skips it entirely.
-                    // This allows walls behind the object to be drawn.
-                    if (mat.getParam("AlphaDiscardThreshold") == null) {
-                        mat.setFloat("AlphaDiscardThreshold", 0.5f);
-                    }
-
-                    // 2. Optional: If you have "True Glass" (windows), you need this instead:
-                    /*
-                    if (geom.getName().contains("Glass")) {
-                        mat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.Alpha);
-                        geom.setQueueBucket(RenderQueue.Bucket.Transparent);
-                        mat.clearParam("AlphaDiscardThreshold"); // Don't use discard on glass
-                    }
-                    */
-                    
-                    // 3. Double Sided (Optional)
-                    // Useful for fences/leaves so you can see them from behind
-                    mat.getAdditionalRenderState().setFaceCullMode(RenderState.FaceCullMode.Off);
-                }
-            }
-        });
-    }
-
     private void initAudio(Spatial sceneModel) {
+        // collected first, the cache may swap nodes out and that can't happen mid traversal
+        List<AudioNode> found = new ArrayList<>();
         sceneModel.breadthFirstTraversal(new SceneGraphVisitor() {
             @Override
             public void visit(Spatial spatial) {
                 if (spatial instanceof AudioNode) {
-                    AudioNode audio = (AudioNode) spatial;
-                    System.out.println("Found Audio: " + audio.getName());
-
-                    // Logic: If name contains "ambient", play it!
-                    if (audio.getName().toLowerCase().contains("ambient")) {
-                        audio.setLooping(true);
-                        
-                        // Optional: If you want it to be 3D (louder when close), keep Positional=true.
-                        // If you want it to be global background music (same volume everywhere), set Positional=false.
-                        // audio.setPositional(true); 
-                        
-                        // Tweaking physics of sound
-                        audio.setRefDistance(2f); // Distance where volume is 100%
-                        audio.setMaxDistance(20f); // Distance where volume stops dropping
-                        
-                        audio.play();
-                        System.out.println(" -> Playing Ambient Loop");
-                        
-                        allSounds.add(audio);
-                    }
+                    found.add((AudioNode) spatial);
                 }
             }
         });
+
+        for (AudioNode sceneAudio : found) {
+            AudioNode audio = audioCache.adopt(sceneAudio);
+            System.out.println("Found Audio: " + audio.getName());
+
+            // Logic: If name contains "ambient", play it!
+            if (audio.getName().toLowerCase().contains("ambient")) {
+                audio.setLooping(true);
+                
+                // Optional: If you want it to be 3D (louder when close), keep Positional=true.
+                // If you want it to be global background music (same volume everywhere), set Positional=false.
+                // audio.setPositional(true); 
+                
+                // Tweaking physics of sound
+                audio.setRefDistance(2f); // Distance where volume is 100%
+                audio.setMaxDistance(20f); // Distance where volume stops dropping
+                
+                audio.play();
+                System.out.println(" -> Playing Ambient Loop");
+                
+                allSounds.add(audio);
+            }
+        }
     }
     
     public void toggleFullscreen(boolean enabled) {
-        settings.setFullscreen(enabled);
-        setSettings(settings);
-        restart();
+        // no restart(), that would recreate the context and upload everything again
+        displayModes.setFullscreen(enabled);
+    }
+
+    /**
+     * @param resolution "WIDTHxHEIGHT", one of getDisplayModes().getResolutions()
+     */
+    public void setResolution(String resolution) {
+        displayModes.setResolution(resolution);
+    }
+
+    DisplayModeManager getDisplayModes() {
+        return displayModes;
     }
     
     private static void configureLinuxCompatibility() {
@@ -472,6 +588,68 @@ public class Main extends SimpleApplication {
         System.setProperty("org.lwjgl.glfw.libname", "glfw");
     }
 
+    BetterCharacterControl getPlayerControl() {
+        return playerControl;
+    }
+
+    FocusPicker getFocusPicker() {
+        return focusPicker;
+    }
+
+    boolean isSceneReady() {
+        return sceneReady;
+    }
+
+    /**
+     * the cheap rendering mode: RetroShader everywhere and no shadows. can be switched at any
+     * time once the scene is loaded.
+     */
+    void setRetroMode(boolean retro) {
+        if (!sceneReady || retro == scenePolisher.isApplied()) {
+            return;
+        }
+        if (retro) {
+            if (mainSun != null) {
+                scenePolisher.setLight(mainSun.getDirection(), mainSun.getColor());
+            }
+            scenePolisher.apply(rootNode);
+        } else {
+            scenePolisher.restore();
+        }
+        if (shadowScheduler != null) {
+            shadowScheduler.setShadowsEnabled(!retro);
+        }
+    }
+
+    boolean isRetroMode() {
+        return scenePolisher != null && scenePolisher.isApplied();
+    }
+
+    QualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
+
+    PropInstancer getProps() {
+        return props;
+    }
+
+    LightAssigner getLightAssigner() {
+        return lightAssigner;
+    }
+
+    @Override
+    public void reshape(int w, int h) {
+        super.reshape(w, h);
+        // the menu layers are decoded for the window size
+        if (gameUI != null) {
+            gameUI.resize(w, h);
+        }
+        // the cameras resize themselves, the offscreen buffer and the post processor don't
+        if (dynamicResolution != null) {
+            dynamicResolution.reshape(w, h);
+        }
+    }
+
     @Override
     public void simpleRender(RenderManager rm) {}
     
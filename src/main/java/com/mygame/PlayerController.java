@@ -0,0 +1,270 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.bullet.control.BetterCharacterControl;
+import com.jme3.input.InputManager;
+import com.jme3.input.KeyInput;
+import com.jme3.input.MouseInput;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.AnalogListener;
+import com.jme3.input.controls.KeyTrigger;
+import com.jme3.input.controls.MouseAxisTrigger;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Node;
+import com.jme3.scene.control.AbstractControl;
+
+/**
+ * WASD movement, mouse look and keeping the camera on the player's head.
+ *
+ * physics steps in fixed time steps on its own thread (see Main.PHYSICS_STEP), so the walk
+ * direction is set in prePhysicsTick, once per step, and not with the frame's tpf. the player
+ * node and the camera are placed between the last two physics states, that way movement stays
+ * smooth whether the game renders at 30 or 2000 fps.
+ *
+ * threading: the physics thread only runs between render() and postRender() of a frame,
+ * input and update() happen outside of that, so the fields below are never used by both at once.
+ *
+ * this runs every frame (and the mouse listener several times per frame) so everything works
+ * on temporaries owned by this state, nothing gets allocated once the game is running.
+ */
+public class PlayerController extends BaseAppState implements PhysicsTickListener {
+
+    private static final String LEFT = "Left";
+    private static final String RIGHT = "Right";
+    private static final String UP = "Up";
+    private static final String DOWN = "Down";
+    private static final String ROTATE_LEFT = "RotateLeft";
+    private static final String ROTATE_RIGHT = "RotateRight";
+    private static final String LOOK_UP = "LookUp";
+    private static final String LOOK_DOWN = "LookDown";
+
+    private final Camera cam;
+    private final Node playerNode;
+    private final BetterCharacterControl playerControl;
+    private final float timeStep;
+    private InputManager inputManager;
+
+    private boolean left = false, right = false, up = false, down = false;
+    private float mouseSensitivity = 1.0f;
+    private float walkSpeed = 5f;
+    private float eyeHeight = 5.3f;
+
+    // reused every frame
+    private final Vector3f nodeDir = new Vector3f();
+    private final Vector3f nodeLeft = new Vector3f();
+    private final Vector3f walkDirection = new Vector3f();
+    private final Vector3f viewDirection = new Vector3f();
+    private final Vector3f camLocation = new Vector3f();
+    private final Quaternion camRotation = new Quaternion();
+    private final Quaternion mouseRotation = new Quaternion();
+    private final float[] angles = new float[3];
+    private final float[] camAngles = new float[3];
+
+    // the last two physics states and the time the physics hasn't stepped through yet
+    private final Vector3f previousLocation = new Vector3f();
+    private final Vector3f currentLocation = new Vector3f();
+    private final Vector3f renderLocation = new Vector3f();
+    private boolean hasPhysicsState = false;
+    private float accumulator = 0;
+    private float alpha = 0;
+
+    // runs after the BetterCharacterControl (added later), overrides the location it copied over.
+    // the listeners and this are package private for the AllocationCheck
+    final AbstractControl follow = new AbstractControl() {
+        @Override
+        protected void controlUpdate(float tpf) {
+            followPhysics();
+        }
+
+        @Override
+        protected void controlRender(RenderManager rm, ViewPort vp) {}
+    };
+
+    /**
+     * @param timeStep the fixed physics step, the same one the physics space uses
+     */
+    public PlayerController(Camera cam, Node playerNode, BetterCharacterControl playerControl, float timeStep) {
+        this.cam = cam;
+        this.playerNode = playerNode;
+        this.playerControl = playerControl;
+        this.timeStep = timeStep;
+    }
+
+    public void setMouseSensitivity(float mouseSensitivity) {
+        this.mouseSensitivity = mouseSensitivity;
+    }
+
+    public float getMouseSensitivity() {
+        return mouseSensitivity;
+    }
+
+    /**
+     * how far above the player node the camera is.
+     */
+    float getEyeHeight() {
+        return eyeHeight;
+    }
+
+    /**
+     * sets the movement keys directly, for scripted input and the benchmarks.
+     */
+    void setInput(boolean left, boolean right, boolean up, boolean down) {
+        this.left = left;
+        this.right = right;
+        this.up = up;
+        this.down = down;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        inputManager = app.getInputManager();
+        inputManager.addMapping(LEFT, new KeyTrigger(KeyInput.KEY_A));
+        inputManager.addMapping(RIGHT, new KeyTrigger(KeyInput.KEY_D));
+        inputManager.addMapping(UP, new KeyTrigger(KeyInput.KEY_W));
+        inputManager.addMapping(DOWN, new KeyTrigger(KeyInput.KEY_S));
+
+        inputManager.addMapping(ROTATE_LEFT, new MouseAxisTrigger(MouseInput.AXIS_X, true));
+        inputManager.addMapping(ROTATE_RIGHT, new MouseAxisTrigger(MouseInput.AXIS_X, false));
+        inputManager.addMapping(LOOK_UP, new MouseAxisTrigger(MouseInput.AXIS_Y, false));
+        inputManager.addMapping(LOOK_DOWN, new MouseAxisTrigger(MouseInput.AXIS_Y, true));
+
+        playerControl.getPhysicsSpace().addTickListener(this);
+        playerNode.addControl(follow);
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        for (String mapping : new String[]{LEFT, RIGHT, UP, DOWN, ROTATE_LEFT, ROTATE_RIGHT, LOOK_UP, LOOK_DOWN}) {
+            inputManager.deleteMapping(mapping);
+        }
+        playerControl.getPhysicsSpace().removeTickListener(this);
+        playerNode.removeControl(follow);
+    }
+
+    @Override
+    protected void onEnable() {
+        inputManager.addListener(actionListener, LEFT, RIGHT, UP, DOWN);
+        inputManager.addListener(analogListener, ROTATE_LEFT, ROTATE_RIGHT, LOOK_UP, LOOK_DOWN);
+        follow.setEnabled(true);
+    }
+
+    @Override
+    protected void onDisable() {
+        inputManager.removeListener(actionListener);
+        inputManager.removeListener(analogListener);
+        left = right = up = down = false;
+        playerControl.setWalkDirection(Vector3f.ZERO);
+        // whoever disabled this (the benchmark) moves the camera now
+        follow.setEnabled(false);
+    }
+
+    final ActionListener actionListener = new ActionListener() {
+        @Override
+        public void onAction(String name, boolean isPressed, float tpf) {
+            if (name.equals(LEFT)) left = isPressed;
+            if (name.equals(RIGHT)) right = isPressed;
+            if (name.equals(UP)) up = isPressed;
+            if (name.equals(DOWN)) down = isPressed;
+        }
+    };
+
+    final AnalogListener analogListener = new AnalogListener() {
+        @Override
+        public void onAnalog(String name, float value, float tpf) {
+            if (inputManager.isCursorVisible()) return;
+
+            if (name.equals(ROTATE_LEFT)) rotatePlayer(value * mouseSensitivity, Vector3f.UNIT_Y);
+            if (name.equals(ROTATE_RIGHT)) rotatePlayer(-value * mouseSensitivity, Vector3f.UNIT_Y);
+            if (name.equals(LOOK_UP)) rotateCamera(-value * mouseSensitivity);
+            if (name.equals(LOOK_DOWN)) rotateCamera(value * mouseSensitivity);
+        }
+    };
+
+    private void rotatePlayer(float value, Vector3f axis) {
+        mouseRotation.fromAngleAxis(value, axis);
+        playerNode.rotate(mouseRotation);
+        playerNode.getLocalRotation().mult(Vector3f.UNIT_Z, viewDirection);
+        playerControl.setViewDirection(viewDirection);
+    }
+
+    private void rotateCamera(float value) {
+        mouseRotation.fromAngleAxis(value, Vector3f.UNIT_X);
+        cam.getRotation().multLocal(mouseRotation);
+    }
+
+    @Override
+    public void update(float tpf) {
+        // the physics stepped everything up to the last frame except what's left below a step,
+        // the rendering sits that far between the last two states (one step behind, always smooth).
+        // bullet keeps its leftover the same way, dropped steps (more than maxSubSteps) included
+        alpha = accumulator / timeStep;
+        // this frame's time gets stepped while the frame renders
+        accumulator = (accumulator + tpf) % timeStep;
+    }
+
+    /**
+     * movement relative to where the player is facing, once per physics step.
+     */
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+        if (!isEnabled()) {
+            return;
+        }
+        Quaternion rotation = playerNode.getLocalRotation();
+        rotation.mult(Vector3f.UNIT_Z, nodeDir);
+        rotation.mult(Vector3f.UNIT_X, nodeLeft);
+
+        walkDirection.set(0, 0, 0);
+        if (left) walkDirection.addLocal(nodeLeft);
+        if (right) walkDirection.subtractLocal(nodeLeft);
+        if (up) walkDirection.addLocal(nodeDir);
+        if (down) walkDirection.subtractLocal(nodeDir);
+
+        walkDirection.y = 0;
+        walkDirection.multLocal(walkSpeed);
+        playerControl.setWalkDirection(walkDirection);
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+        if (!hasPhysicsState) {
+            playerControl.getRigidBody().getPhysicsLocation(previousLocation);
+            hasPhysicsState = true;
+        } else {
+            previousLocation.set(currentLocation);
+        }
+        playerControl.getRigidBody().getPhysicsLocation(currentLocation);
+    }
+
+    /**
+     * after a warp the old states are meaningless, the next step starts fresh.
+     */
+    void resetInterpolation() {
+        hasPhysicsState = false;
+    }
+
+    private void followPhysics() {
+        // 1. player node between the last two physics states
+        if (hasPhysicsState) {
+            renderLocation.set(previousLocation).interpolateLocal(currentLocation, alpha);
+            playerNode.setLocalTranslation(renderLocation);
+        }
+
+        // 2. camera follows the head, yaw from the player node, pitch from the camera itself
+        camLocation.set(playerNode.getWorldTranslation()).addLocal(0, eyeHeight, 0);
+        cam.setLocation(camLocation);
+
+        Quaternion rotation = playerNode.getLocalRotation();
+        rotation.toAngles(angles);
+        cam.getRotation().toAngles(camAngles);
+        camRotation.fromAngles(camAngles[0], angles[1], 0);
+        cam.setRotation(camRotation);
+    }
+}
@@ -0,0 +1,158 @@
+package com.mygame;
+
+import com.jme3.material.Material;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.LodControl;
+import com.jme3.scene.instancing.InstancedGeometry;
+import com.jme3.scene.instancing.InstancedNode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * places lots of copies of the same prop (chairs, radios, ...) for a handful of draw calls.
+ *
+ * every model is loaded once, the copies share its meshes and materials and are drawn with
+ * hardware instancing. the level is split into chunks with one InstancedNode each, so
+ * instances are culled per chunk: a chunk behind the camera costs nothing, a visible one
+ * draws all of its instances in one call per mesh. inside a visible chunk the InstancedGeometry
+ * still drops the instances outside the frustum before it uploads their transforms.
+ *
+ * the models come from the LodBaker. the LOD level is picked per InstancedGeometry, so all
+ * copies of a mesh in one chunk switch together.
+ */
+public class PropInstancer {
+
+    private final LodBaker lods;
+    private final Node parent;
+    private final float chunkSize;
+
+    private final Map<String, Spatial> templates = new HashMap<>();
+    private final Map<String, Boolean> instanceable = new HashMap<>();
+    private final Map<Long, InstancedNode> chunks = new HashMap<>();
+    // models whose materials can't do instancing go here as plain copies
+    private final Node plainProps = new Node("Props");
+    private int instanceCount = 0;
+
+    public PropInstancer(LodBaker lods, Node parent, float chunkSize) {
+        this.lods = lods;
+        this.parent = parent;
+        this.chunkSize = chunkSize;
+        parent.attachChild(plainProps);
+    }
+
+    public void place(String modelPath, Transform transform) {
+        place(modelPath, Collections.singletonList(transform));
+    }
+
+    /**
+     * adds one copy of the model per transform.
+     */
+    public void place(String modelPath, List<Transform> transforms) {
+        Spatial template = template(modelPath);
+        boolean instanced = instanceable.get(modelPath);
+
+        Set<InstancedNode> touched = new HashSet<>();
+        for (Transform transform : transforms) {
+            // shares meshes and materials with the template
+            Spatial copy = template.clone(false);
+            copy.setLocalTransform(transform);
+            if (instanced) {
+                InstancedNode chunk = chunk(transform.getTranslation());
+                chunk.attachChild(copy);
+                touched.add(chunk);
+            } else {
+                plainProps.attachChild(copy);
+            }
+            instanceCount++;
+        }
+
+        // groups the new copies into the chunk's InstancedGeometries
+        for (InstancedNode chunk : touched) {
+            chunk.instance();
+            for (Spatial child : chunk.getChildren()) {
+                if (child instanceof InstancedGeometry) {
+                    LodBaker.attachLod((Geometry) child);
+                }
+            }
+        }
+    }
+
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    private Spatial template(String modelPath) {
+        Spatial template = templates.get(modelPath);
+        if (template != null) {
+            return template;
+        }
+        // own materials, so turning instancing on doesn't touch other copies of the model
+        template = lods.load(modelPath);
+
+        // every material has to support instancing, otherwise the model is placed as normal copies
+        List<Material> materials = new ArrayList<>();
+        boolean[] supported = {true};
+        template.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                Material mat = geom.getMaterial();
+                if (mat != null && mat.getMaterialDef().getMaterialParam("UseInstancing") != null) {
+                    materials.add(mat);
+                } else {
+                    supported[0] = false;
+                }
+            }
+        });
+        if (supported[0]) {
+            for (Material mat : materials) {
+                mat.setBoolean("UseInstancing", true);
+            }
+            // the level is picked for the whole InstancedGeometry instead of every copy
+            removeLodControls(template);
+        } else {
+            System.err.println("PropInstancer: " + modelPath + " has a material without instancing, placing plain copies");
+        }
+        templates.put(modelPath, template);
+        instanceable.put(modelPath, supported[0]);
+        return template;
+    }
+
+    private static void removeLodControls(Spatial spatial) {
+        spatial.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                geom.removeControl(LodControl.class);
+            }
+        });
+    }
+
+    private InstancedNode chunk(Vector3f position) {
+        int x = cell(position.x), y = cell(position.y), z = cell(position.z);
+        long key = ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+        InstancedNode chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = new InstancedNode("Props " + x + "," + y + "," + z);
+            chunks.put(key, chunk);
+            parent.attachChild(chunk);
+        }
+        return chunk;
+    }
+
+    private int cell(float v) {
+        return (int) Math.floor(v / chunkSize);
+    }
+}
@@ -0,0 +1,206 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * sphere shaped trigger zones around interactables (door, radio, ...).
+ *
+ * instead of every object checking its distance to the camera each frame, the zones are put
+ * into a uniform grid once. per frame only the zones in the camera's cell and the ones the
+ * camera is already inside get tested (squared distances, no sqrt), so adding more zones
+ * elsewhere in the level doesn't cost anything. listeners only hear about enter and exit,
+ * plus a stay call every frame while inside.
+ */
+public class ProximityTriggers extends BaseAppState {
+
+    public interface ZoneListener {
+        void onEnter(Zone zone);
+
+        void onExit(Zone zone);
+
+        /** every frame while inside, position is where the tracked camera is */
+        default void onStay(Zone zone, Vector3f position, float tpf) {}
+    }
+
+    public static final class Zone {
+        private final Vector3f center = new Vector3f();
+        private float radius;
+        private float radiusSq;
+        private final ZoneListener listener;
+        private boolean inside = false;
+
+        private Zone(Vector3f center, float radius, ZoneListener listener) {
+            this.center.set(center);
+            this.radius = radius;
+            this.radiusSq = radius * radius;
+            this.listener = listener;
+        }
+
+        public Vector3f getCenter() {
+            return center;
+        }
+
+        public float getRadius() {
+            return radius;
+        }
+
+        public boolean isInside() {
+            return inside;
+        }
+    }
+
+    private final Camera cam;
+    private final float cellSize;
+
+    private final Map<Long, List<Zone>> grid = new HashMap<>();
+    private final List<Zone> insideZones = new ArrayList<>();
+    private int zoneCount = 0;
+
+    private final Vector3f lastPosition = new Vector3f(Float.NaN, Float.NaN, Float.NaN);
+    private boolean dirty = true;
+
+    public ProximityTriggers(Camera cam, float cellSize) {
+        this.cam = cam;
+        this.cellSize = cellSize;
+    }
+
+    public Zone addZone(Vector3f center, float radius, ZoneListener listener) {
+        Zone zone = new Zone(center, radius, listener);
+        insert(zone);
+        zoneCount++;
+        dirty = true;
+        return zone;
+    }
+
+    /**
+     * removes the zone, if the camera is inside it the listener gets an exit first.
+     */
+    public void removeZone(Zone zone) {
+        if (zone.inside) {
+            zone.inside = false;
+            insideZones.remove(zone);
+            zone.listener.onExit(zone);
+        }
+        remove(zone);
+        zoneCount--;
+    }
+
+    public void moveZone(Zone zone, Vector3f center) {
+        remove(zone);
+        zone.center.set(center);
+        insert(zone);
+        dirty = true;
+    }
+
+    public int getZoneCount() {
+        return zoneCount;
+    }
+
+    @Override
+    protected void initialize(Application app) {}
+
+    @Override
+    protected void cleanup(Application app) {}
+
+    @Override
+    protected void onEnable() {
+        dirty = true;
+    }
+
+    @Override
+    protected void onDisable() {
+        // leaving every zone, so nothing stays shown while disabled
+        for (int i = insideZones.size() - 1; i >= 0; i--) {
+            Zone zone = insideZones.remove(i);
+            zone.inside = false;
+            zone.listener.onExit(zone);
+        }
+    }
+
+    @Override
+    public void update(float tpf) {
+        Vector3f position = cam.getLocation();
+
+        // standing still, nothing can have changed for the zones
+        if (dirty || !position.equals(lastPosition)) {
+            dirty = false;
+            lastPosition.set(position);
+            updateGrid(position);
+        }
+
+        for (int i = insideZones.size() - 1; i >= 0; i--) {
+            Zone zone = insideZones.get(i);
+            zone.listener.onStay(zone, position, tpf);
+        }
+    }
+
+    private void updateGrid(Vector3f position) {
+        // exits first, only the zones we're in can be left
+        for (int i = insideZones.size() - 1; i >= 0; i--) {
+            Zone zone = insideZones.get(i);
+            if (zone.center.distanceSquared(position) > zone.radiusSq) {
+                insideZones.remove(i);
+                zone.inside = false;
+                zone.listener.onExit(zone);
+            }
+        }
+
+        // every zone overlapping the camera's position is in its cell
+        List<Zone> cell = grid.get(key(cell(position.x), cell(position.y), cell(position.z)));
+        if (cell == null) {
+            return;
+        }
+        for (int i = 0; i < cell.size(); i++) {
+            Zone zone = cell.get(i);
+            if (!zone.inside && zone.center.distanceSquared(position) <= zone.radiusSq) {
+                zone.inside = true;
+                insideZones.add(zone);
+                zone.listener.onEnter(zone);
+            }
+        }
+    }
+
+    private void insert(Zone zone) {
+        forEachCell(zone, key -> grid.computeIfAbsent(key, k -> new ArrayList<>()).add(zone));
+    }
+
+    private void remove(Zone zone) {
+        forEachCell(zone, key -> {
+            List<Zone> cell = grid.get(key);
+            if (cell != null) {
+                cell.remove(zone);
+                if (cell.isEmpty()) {
+                    grid.remove(key);
+                }
+            }
+        });
+    }
+
+    private void forEachCell(Zone zone, LongConsumer action) {
+        Vector3f c = zone.center;
+        float r = zone.radius;
+        for (int x = cell(c.x - r); x <= cell(c.x + r); x++) {
+            for (int y = cell(c.y - r); y <= cell(c.y + r); y++) {
+                for (int z = cell(c.z - r); z <= cell(c.z + r); z++) {
+                    action.accept(key(x, y, z));
+                }
+            }
+        }
+    }
+
+    private int cell(float v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+}
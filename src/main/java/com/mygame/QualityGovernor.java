@@ -0,0 +1,216 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.post.FilterPostProcessor;
+import com.jme3.post.filters.BloomFilter;
+import com.jme3.post.filters.DepthOfFieldFilter;
+import com.jme3.post.filters.FXAAFilter;
+import com.jme3.renderer.ViewPort;
+
+/**
+ * keeps the post processing chain cheap enough for the machine it runs on.
+ *
+ * watches the average frame time over the last second and steps the filter settings down
+ * when it's over the target, and back up once there's plenty of headroom. the presets can
+ * also be picked by hand in the settings, that turns the automatic part off.
+ *
+ * DynamicResolution reacts to the same frame times and comes first: it's cheaper to change
+ * and easier to undo. the presets only go down once the resolution is as low as it goes, and
+ * only back up once it's at full resolution again, otherwise the two would fight over the
+ * same milliseconds.
+ */
+public class QualityGovernor extends BaseAppState {
+
+    public enum Preset {
+        //     ssao                               radius bloomDownsampling dofBlur fxaa
+        LOW    (HalfResSSAOFilter.Quality.OFF,     3f,    8f,               0.75f,  false),
+        MEDIUM (HalfResSSAOFilter.Quality.QUARTER, 3f,    4f,               1.0f,   true),
+        HIGH   (HalfResSSAOFilter.Quality.HALF,    4.5f,  2f,               1.5f,   true),
+        ULTRA  (HalfResSSAOFilter.Quality.FULL,    6f,    2f,               1.5f,   true);
+
+        final HalfResSSAOFilter.Quality ssao;
+        final float ssaoRadius;
+        final float bloomDownSampling;
+        final float dofBlurScale;
+        final boolean fxaa;
+
+        Preset(HalfResSSAOFilter.Quality ssao, float ssaoRadius,
+               float bloomDownSampling, float dofBlurScale, boolean fxaa) {
+            this.ssao = ssao;
+            this.ssaoRadius = ssaoRadius;
+            this.bloomDownSampling = bloomDownSampling;
+            this.dofBlurScale = dofBlurScale;
+            this.fxaa = fxaa;
+        }
+    }
+
+    private static final int SAMPLES = 60;
+    // after a change, wait this long before judging again (the change itself can cause a spike)
+    private static final float COOLDOWN = 2f;
+
+    private final ViewPort viewPort;
+    private final FilterPostProcessor fpp;
+    private final HalfResSSAOFilter ssao;
+    private final BloomFilter bloom;
+    private final DepthOfFieldFilter dof;
+    private final FXAAFilter fxaa;
+
+    private Preset preset = Preset.ULTRA;
+    // picked by hand in the settings, null follows the preset
+    private HalfResSSAOFilter.Quality ssaoOverride;
+    private boolean auto = true;
+    private float targetFrameTime = 1f / 60f;
+
+    // rolling frame times
+    private final float[] frameTimes = new float[SAMPLES];
+    private int sampleIndex = 0;
+    private int sampleCount = 0;
+    private float frameTimeSum = 0;
+    private float cooldown = COOLDOWN;
+
+    // the primary controller, null when there's none
+    private DynamicResolution resolution;
+
+    public QualityGovernor(ViewPort viewPort, FilterPostProcessor fpp, HalfResSSAOFilter ssao, BloomFilter bloom,
+                           DepthOfFieldFilter dof, FXAAFilter fxaa) {
+        this.viewPort = viewPort;
+        this.fpp = fpp;
+        this.ssao = ssao;
+        this.bloom = bloom;
+        this.dof = dof;
+        this.fxaa = fxaa;
+    }
+
+    /**
+     * picks a preset and stops adjusting it automatically.
+     */
+    public void setPreset(Preset preset) {
+        auto = false;
+        apply(preset);
+    }
+
+    /**
+     * fixes the SSAO resolution no matter what the preset says, null to follow the preset again.
+     */
+    public void setSsaoQuality(HalfResSSAOFilter.Quality quality) {
+        ssaoOverride = quality;
+        ssao.setQuality(quality != null ? quality : preset.ssao);
+    }
+
+    public Preset getPreset() {
+        return preset;
+    }
+
+    /**
+     * lets the governor pick the preset from the frame times again.
+     */
+    public void setAuto(boolean auto) {
+        this.auto = auto;
+        resetSamples();
+    }
+
+    public boolean isAuto() {
+        return auto;
+    }
+
+    /**
+     * the presets then only change when the resolution can't, see the class comment.
+     */
+    public void setDynamicResolution(DynamicResolution resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * the frame time to stay under, in seconds (default 1/60).
+     */
+    public void setTargetFrameTime(float seconds) {
+        targetFrameTime = seconds;
+    }
+
+    /**
+     * average of the last second, in seconds.
+     */
+    public float getAverageFrameTime() {
+        return sampleCount == 0 ? 0 : frameTimeSum / sampleCount;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        apply(preset);
+    }
+
+    @Override
+    protected void cleanup(Application app) {}
+
+    @Override
+    protected void onEnable() {
+        resetSamples();
+    }
+
+    @Override
+    protected void onDisable() {}
+
+    @Override
+    public void update(float tpf) {
+        frameTimeSum += tpf - frameTimes[sampleIndex];
+        frameTimes[sampleIndex] = tpf;
+        sampleIndex = (sampleIndex + 1) % SAMPLES;
+        if (sampleCount < SAMPLES) {
+            sampleCount++;
+        }
+
+        cooldown -= tpf;
+        if (!auto || cooldown > 0 || sampleCount < SAMPLES) {
+            return;
+        }
+
+        float average = getAverageFrameTime();
+        Preset[] presets = Preset.values();
+        if (average > targetFrameTime * 1.1f && preset.ordinal() > 0
+                && (resolution == null || !resolution.canScaleDown())) {
+            apply(presets[preset.ordinal() - 1]);
+        } else if (average < targetFrameTime * 0.7f && preset.ordinal() < presets.length - 1
+                && (resolution == null || !resolution.canScaleUp())) {
+            apply(presets[preset.ordinal() + 1]);
+        }
+    }
+
+    private void apply(Preset next) {
+        boolean bloomChanged = next.bloomDownSampling != bloom.getDownSamplingFactor();
+        if (next != preset) {
+            System.out.println("Post processing quality: " + preset + " -> " + next
+                    + String.format(" (%.1f ms avg)", getAverageFrameTime() * 1000));
+        }
+        preset = next;
+
+        ssao.setQuality(ssaoOverride != null ? ssaoOverride : next.ssao);
+        ssao.setSampleRadius(next.ssaoRadius);
+        bloom.setDownSamplingFactor(next.bloomDownSampling);
+        dof.setBlurScale(next.dofBlurScale);
+        fxaa.setEnabled(next.fxaa);
+
+        // bloom only reads the downsampling factor when its buffers are created, so the whole
+        // chain has to initialize again. with dynamic resolution that needs a new processor
+        // (see DynamicResolution.restartPostProcessor), without it off and back on is enough
+        if (bloomChanged) {
+            if (resolution != null) {
+                resolution.restartPostProcessor();
+            } else if (fpp.isInitialized()) {
+                viewPort.removeProcessor(fpp);
+                viewPort.addProcessor(fpp);
+            }
+        }
+        resetSamples();
+    }
+
+    private void resetSamples() {
+        for (int i = 0; i < SAMPLES; i++) {
+            frameTimes[i] = 0;
+        }
+        sampleIndex = 0;
+        sampleCount = 0;
+        frameTimeSum = 0;
+        cooldown = COOLDOWN;
+    }
+}
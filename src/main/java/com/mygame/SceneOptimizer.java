@@ -0,0 +1,181 @@
+package com.mygame;
+
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.VertexBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jme3tools.optimize.GeometryBatchFactory;
+
+/**
+ * runs once after the office is loaded and makes it cheaper to draw.
+ *
+ * static geometries with the same material are merged into one mesh per grid cell, so the
+ * room is a few dozen draw calls instead of one per sub mesh. the cell keeps merged meshes
+ * small enough that frustum culling and the LightAssigner still have something to work with.
+ * (back face culling for the opaque materials is already decided by the ScenePreprocessor.)
+ *
+ * has to run before the lights are assigned and before anything keeps references to the
+ * scene's geometries (FocusPicker, physics).
+ */
+public class SceneOptimizer {
+
+    private final float cellSize;
+
+    private int drawCallsBefore, drawCallsAfter;
+    private int trianglesBefore, trianglesAfter;
+
+    // reused while grouping
+    private final Vector3f center = new Vector3f();
+
+    public SceneOptimizer(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public void optimize(Node scene) {
+        scene.updateGeometricState();
+        List<Geometry> geometries = collect(scene);
+        drawCallsBefore = geometries.size();
+        trianglesBefore = countTriangles(geometries);
+
+        // the merged meshes are in world space, this node undoes the scene's own transform
+        Node batches = new Node(scene.getName() + "-batches");
+        batches.setLocalTransform(scene.getWorldTransform().invert());
+        scene.attachChild(batches);
+
+        // group by material, render settings and grid cell. materials are compared by content,
+        // the importer makes a new Material for every sub mesh even when they're the same
+        List<Material> canonical = new ArrayList<>();
+        Map<String, List<Geometry>> groups = new LinkedHashMap<>();
+        for (Geometry geom : geometries) {
+            if (!canMerge(geom)) {
+                continue;
+            }
+            int materialId = canonicalIndex(canonical, geom.getMaterial());
+            geom.getWorldBound().getCenter(center);
+            String key = materialId + "|" + geom.getQueueBucket() + "|" + geom.getShadowMode()
+                    + "|" + bufferSignature(geom.getMesh())
+                    + "|" + cell(center.x) + "," + cell(center.y) + "," + cell(center.z);
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(geom);
+        }
+
+        int merged = 0;
+        for (List<Geometry> group : groups.values()) {
+            if (group.size() < 2) {
+                continue;
+            }
+            Geometry first = group.get(0);
+            Mesh mesh = new Mesh();
+            try {
+                GeometryBatchFactory.mergeGeometries(group, mesh);
+            } catch (RuntimeException e) {
+                // leave this group alone, the rest still gets merged
+                System.err.println("SceneOptimizer: could not merge " + group.size() + " x " + first.getName() + ": " + e);
+                continue;
+            }
+            mesh.updateCounts();
+            mesh.updateBound();
+            mesh.setStatic();
+
+            Geometry batch = new Geometry("batch-" + first.getName() + "-" + group.size(), mesh);
+            batch.setMaterial(first.getMaterial());
+            batch.setQueueBucket(first.getQueueBucket());
+            batch.setShadowMode(first.getShadowMode());
+            batches.attachChild(batch);
+
+            for (Geometry geom : group) {
+                geom.removeFromParent();
+            }
+            merged += group.size();
+        }
+        scene.updateGeometricState();
+
+        List<Geometry> after = collect(scene);
+        drawCallsAfter = after.size();
+        trianglesAfter = countTriangles(after);
+        System.out.println("SceneOptimizer: merged " + merged + " geometries into "
+                + batches.getQuantity() + " batches");
+    }
+
+    public void printStats() {
+        System.out.println("--- SCENE OPTIMIZER ---");
+        System.out.println("Draw calls: " + drawCallsBefore + " before, " + drawCallsAfter + " after");
+        System.out.println("Triangles: " + trianglesBefore + " before, " + trianglesAfter + " after");
+        System.out.println("-----------------------");
+    }
+
+    public int getDrawCallsBefore() {
+        return drawCallsBefore;
+    }
+
+    public int getDrawCallsAfter() {
+        return drawCallsAfter;
+    }
+
+    private static boolean canMerge(Geometry geom) {
+        Mesh mesh = geom.getMesh();
+        return geom.getMaterial() != null
+                && mesh.getMode() == Mesh.Mode.Triangles
+                && geom.getNumControls() == 0
+                && geom.getLocalLightList().size() == 0
+                && mesh.getNumLodLevels() == 0
+                // skinned / morphed meshes have to stay separate
+                && mesh.getBuffer(VertexBuffer.Type.BoneIndex) == null
+                && !mesh.hasMorphTargets();
+    }
+
+    /**
+     * merged meshes need the same vertex buffers, otherwise some vertices get garbage.
+     */
+    private static String bufferSignature(Mesh mesh) {
+        StringBuilder sb = new StringBuilder();
+        for (VertexBuffer.Type type : VertexBuffer.Type.values()) {
+            VertexBuffer vb = mesh.getBuffer(type);
+            if (vb != null && type != VertexBuffer.Type.Index) {
+                sb.append(type.ordinal()).append(':').append(vb.getNumComponents()).append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int canonicalIndex(List<Material> canonical, Material mat) {
+        for (int i = 0; i < canonical.size(); i++) {
+            if (canonical.get(i) == mat || canonical.get(i).contentEquals(mat)) {
+                return i;
+            }
+        }
+        canonical.add(mat);
+        return canonical.size() - 1;
+    }
+
+    private static List<Geometry> collect(Node scene) {
+        List<Geometry> geometries = new ArrayList<>();
+        scene.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                if (geom.getMesh() != null) {
+                    geometries.add(geom);
+                }
+            }
+        });
+        return geometries;
+    }
+
+    private static int countTriangles(List<Geometry> geometries) {
+        int triangles = 0;
+        for (Geometry geom : geometries) {
+            triangles += geom.getTriangleCount();
+        }
+        return triangles;
+    }
+
+    private int cell(float v) {
+        return (int) Math.floor(v / cellSize);
+    }
+}
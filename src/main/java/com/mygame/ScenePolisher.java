@@ -1,35 +1,100 @@
 package com.mygame;
 
 import com.jme3.asset.AssetManager;
+import com.jme3.material.MatParam;
+import com.jme3.material.MatParamTexture;
 import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
+/**
+ * the cheap rendering mode: swaps every material in the scene for the RetroShader (one
+ * vertex lit light, color bands, no PBR) and can put the original materials back.
+ *
+ * materials are converted once and shared the same way the originals were, so merged and
+ * instanced geometry stays merged and instanced.
+ */
 public class ScenePolisher extends SceneGraphVisitorAdapter {
 
     private final AssetManager assetManager;
     // Hardcoded light direction to match your Main.java sun
     // In a bigger engine, you'd pass this in via a uniform binding system
     private final Vector3f lightDirection = new Vector3f(-0.5f, -0.5f, -0.5f).normalizeLocal();
+    private ColorRGBA lightColor = ColorRGBA.White;
+    private float colorSteps = 4.0f; // 4 bands of light. Set to 0.0f for smooth Gouraud.
+
+    // original material -> retro material
+    private final Map<Material, Material> converted = new IdentityHashMap<>();
+    // geometry -> the material it had before apply()
+    private final Map<Geometry, Material> originals = new IdentityHashMap<>();
 
     public ScenePolisher(AssetManager assetManager) {
         this.assetManager = assetManager;
     }
 
+    /**
+     * use the scene's sun instead of the hardcoded direction.
+     */
+    public void setLight(Vector3f direction, ColorRGBA color) {
+        lightDirection.set(direction).normalizeLocal();
+        lightColor = color;
+        for (Material retroMat : converted.values()) {
+            retroMat.setVector3("LightDir", lightDirection);
+            retroMat.setColor("LightColor", lightColor);
+        }
+    }
+
+    public void setColorSteps(float colorSteps) {
+        this.colorSteps = colorSteps;
+        for (Material retroMat : converted.values()) {
+            retroMat.setFloat("ColorSteps", colorSteps);
+        }
+    }
+
+    /**
+     * switches everything under scene to the retro materials.
+     */
+    public void apply(Spatial scene) {
+        scene.depthFirstTraversal(this);
+        System.out.println("Retro shading on " + originals.size() + " geometries (" + converted.size() + " materials)");
+    }
+
+    /**
+     * puts the original materials back.
+     */
+    public void restore() {
+        for (Map.Entry<Geometry, Material> entry : originals.entrySet()) {
+            entry.getKey().setMaterial(entry.getValue());
+        }
+        originals.clear();
+    }
+
+    public boolean isApplied() {
+        return !originals.isEmpty();
+    }
+
     @Override
     public void visit(Geometry geom) {
         Material oldMat = geom.getMaterial();
-        if (oldMat == null) return;
+        if (oldMat == null || originals.containsKey(geom) || converted.containsValue(oldMat)) return;
 
+        originals.put(geom, oldMat);
+        geom.setMaterial(converted.computeIfAbsent(oldMat, this::convert));
+    }
+
+    private Material convert(Material oldMat) {
         // Try to recover the original color, otherwise default to gray
         ColorRGBA baseColor = ColorRGBA.Gray;
-        
+
         // Check for PBR color
         if (oldMat.getParam("BaseColor") != null) {
             baseColor = (ColorRGBA) oldMat.getParam("BaseColor").getValue();
-        } 
+        }
         // Check for Legacy Lighting color
         else if (oldMat.getParam("Diffuse") != null) {
             baseColor = (ColorRGBA) oldMat.getParam("Diffuse").getValue();
@@ -41,14 +106,44 @@ public class ScenePolisher extends SceneGraphVisitorAdapter {
 
         // Create our new Retro Material
         Material retroMat = new Material(assetManager, "MatDefs/RetroShader.j3md");
-        
+
         // Set the parameters
         retroMat.setColor("BaseColor", baseColor);
         retroMat.setVector3("LightDir", lightDirection);
-        retroMat.setFloat("ColorSteps", 4.0f); // 4 bands of light. Set to 0.0f for smooth Gouraud.
+        retroMat.setColor("LightColor", lightColor);
+        retroMat.setFloat("ColorSteps", colorSteps);
+
+        // the optional parts, each one turns on its define in the shader
+        MatParam colorMap = firstParam(oldMat, "BaseColorMap", "DiffuseMap", "ColorMap");
+        if (colorMap instanceof MatParamTexture) {
+            retroMat.setTexture("ColorMap", ((MatParamTexture) colorMap).getTextureValue());
+        }
+        if (oldMat.getParam("EmissiveMap") instanceof MatParamTexture) {
+            retroMat.setTexture("EmissiveMap", ((MatParamTexture) oldMat.getParam("EmissiveMap")).getTextureValue());
+        }
+        MatParam emissive = firstParam(oldMat, "Emissive", "GlowColor");
+        if (emissive != null && emissive.getValue() instanceof ColorRGBA) {
+            retroMat.setColor("Emissive", (ColorRGBA) emissive.getValue());
+        }
+        if (oldMat.getParam("AlphaDiscardThreshold") != null) {
+            retroMat.setFloat("AlphaDiscardThreshold", (Float) oldMat.getParam("AlphaDiscardThreshold").getValue());
+        }
+        if (oldMat.getParam("UseInstancing") != null && Boolean.TRUE.equals(oldMat.getParam("UseInstancing").getValue())) {
+            retroMat.setBoolean("UseInstancing", true);
+        }
+        // same culling / blending as before
+        retroMat.getAdditionalRenderState().set(oldMat.getAdditionalRenderState());
 
-        geom.setMaterial(retroMat);
-        
-        System.out.println("Converted " + geom.getName() + " to Retro Vertex Shading.");
+        return retroMat;
+    }
+
+    private static MatParam firstParam(Material mat, String... names) {
+        for (String name : names) {
+            MatParam param = mat.getParam(name);
+            if (param != null) {
+                return param;
+            }
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
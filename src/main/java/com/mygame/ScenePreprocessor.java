@@ -0,0 +1,292 @@
+package com.mygame;
+
+import com.jme3.light.Light;
+import com.jme3.material.MatParam;
+import com.jme3.material.MatParamTexture;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState;
+import com.jme3.math.ColorRGBA;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.SceneGraphVisitor;
+import com.jme3.scene.Spatial;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * everything the freshly loaded office needs before it's used, in one walk over the scene
+ * instead of one per step (nearest filter, transparency and culling, collecting the lights).
+ *
+ * 1. one traversal on the render thread collects the materials, textures and lights.
+ * 2. the per material / per texture work runs on a fork join pool. every task only touches
+ *    its own material or texture, so nothing needs locking.
+ * 3. changes to the scene graph itself (taking the lights off their nodes) happen after
+ *    that, back on the calling thread.
+ *
+ * only materials whose textures really have see-through pixels get the alpha discard and
+ * double sided rendering, the opaque ones get back face culling right away. for atlased
+ * geometries the AtlasPacker already looked at the pixels of their own tile, the atlas as a
+ * whole has empty (transparent) space and would make everything in it look see-through.
+ */
+public class ScenePreprocessor {
+
+    private final ForkJoinPool pool;
+    private boolean nearestFilter = true;
+
+    // the lights in the order they were found, and the spatial each one came from
+    private final List<Light> lights = new ArrayList<>();
+    private final List<Spatial> lightOwners = new ArrayList<>();
+
+    // what the last process() did, for printStats()
+    private long traversalNanos, parallelNanos, detachNanos;
+    private int materialCount, textureCount, culledCount;
+
+    public ScenePreprocessor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * off for baked scenes, their textures already have the filters (and mip maps).
+     */
+    public void setNearestFilter(boolean nearestFilter) {
+        this.nearestFilter = nearestFilter;
+    }
+
+    /**
+     * has to be called on the render thread (or before the scene is attached).
+     */
+    public void process(Spatial scene) {
+        long start = System.nanoTime();
+        lights.clear();
+        lightOwners.clear();
+
+        // 1. the one traversal
+        Set<Material> materials = Collections.newSetFromMap(new IdentityHashMap<>());
+        // materials of geometries in the transparent bucket stay double sided whatever their pixels say
+        Set<Material> transparentBucket = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Texture> textures = Collections.newSetFromMap(new IdentityHashMap<>());
+        // opacity of the color textures recorded at bake time, see AtlasPacker.OPAQUE_KEY
+        Map<Material, Boolean> knownOpacity = new IdentityHashMap<>();
+        scene.breadthFirstTraversal(new SceneGraphVisitor() {
+            @Override
+            public void visit(Spatial spatial) {
+                for (Light light : spatial.getLocalLightList()) {
+                    lights.add(light);
+                    lightOwners.add(spatial);
+                }
+                if (!(spatial instanceof Geometry)) {
+                    return;
+                }
+                Material mat = ((Geometry) spatial).getMaterial();
+                if (mat == null) {
+                    return;
+                }
+                if (spatial.getQueueBucket() == RenderQueue.Bucket.Transparent) {
+                    transparentBucket.add(mat);
+                }
+                Boolean opaque = spatial.getUserData(AtlasPacker.OPAQUE_KEY);
+                if (opaque != null) {
+                    knownOpacity.merge(mat, opaque, Boolean::logicalAnd);
+                }
+                if (materials.add(mat)) {
+                    for (MatParam param : mat.getParams()) {
+                        if (param instanceof MatParamTexture && ((MatParamTexture) param).getTextureValue() != null) {
+                            textures.add(((MatParamTexture) param).getTextureValue());
+                        }
+                    }
+                }
+            }
+        });
+        long traversed = System.nanoTime();
+
+        // 2. independent work on the pool. the opacity check reads the texture pixels, that's the
+        // expensive part. filters and pixels are different fields, so the texture tasks can run
+        // next to it
+        List<Callable<Void>> tasks = new ArrayList<>();
+        if (nearestFilter) {
+            for (Texture tex : textures) {
+                tasks.add(() -> {
+                    setNearestFilter(tex);
+                    return null;
+                });
+            }
+        }
+        AtomicInteger culled = new AtomicInteger();
+        for (Material mat : materials) {
+            boolean forceTransparent = transparentBucket.contains(mat);
+            Boolean texturesOpaque = knownOpacity.get(mat);
+            tasks.add(() -> {
+                if (!forceTransparent && isOpaque(mat, texturesOpaque)) {
+                    mat.getAdditionalRenderState().setFaceCullMode(RenderState.FaceCullMode.Back);
+                    // nothing to discard, and without discard the GPU can keep its early depth test
+                    mat.clearParam("AlphaDiscardThreshold");
+                    culled.incrementAndGet();
+                } else {
+                    fixTransparency(mat);
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+        long parallel = System.nanoTime();
+
+        // 3. scene graph changes, on this thread.
+        // take each light off the node it came with, otherwise it still lights that whole subtree.
+        // the LightAssigner puts it back only where it's needed
+        for (int i = 0; i < lights.size(); i++) {
+            lightOwners.get(i).removeLight(lights.get(i));
+        }
+        long end = System.nanoTime();
+
+        traversalNanos = traversed - start;
+        parallelNanos = parallel - traversed;
+        detachNanos = end - parallel;
+        materialCount = materials.size();
+        textureCount = textures.size();
+        culledCount = culled.get();
+    }
+
+    public void printStats() {
+        System.out.println("--- SCENE PREPROCESSOR ---");
+        System.out.printf("Traversal: %.2f ms (%d materials, %d textures, %d lights)%n",
+                traversalNanos / 1e6, materialCount, textureCount, lights.size());
+        System.out.printf("Materials + textures: %.2f ms on %d threads (back face culling on %d, %d double sided)%n",
+                parallelNanos / 1e6, pool.getParallelism(), culledCount, materialCount - culledCount);
+        System.out.printf("Lights detached: %.2f ms%n", detachNanos / 1e6);
+        System.out.printf("Total: %.2f ms%n", (traversalNanos + parallelNanos + detachNanos) / 1e6);
+        System.out.println("--------------------------");
+    }
+
+    /**
+     * the lights found by the last process(), already taken off the scene.
+     */
+    public List<Light> getLights() {
+        return lights;
+    }
+
+    private void runAll(List<Callable<Void>> tasks) {
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("scene preprocessing failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * nearest neighbor filtering, the crisp pixel art look (same as TextureUtils.setNearestFilter).
+     */
+    static void setNearestFilter(Texture tex) {
+        tex.setMagFilter(Texture.MagFilter.Nearest);
+        tex.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
+    }
+
+    static void fixTransparency(Material mat) {
+        // 1. Enable Alpha Discard (The Magic Fix)
+        // If a pixel's alpha is lower than 0.5, the GPU skips it entirely.
+        // This allows walls behind the object to be drawn.
+        if (mat.getParam("AlphaDiscardThreshold") == null) {
+            mat.setFloat("AlphaDiscardThreshold", 0.5f);
+        }
+
+        // 2. Optional: If you have "True Glass" (windows), you need this instead:
+        /*
+        if (geom.getName().contains("Glass")) {
+            mat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.Alpha);
+            geom.setQueueBucket(RenderQueue.Bucket.Transparent);
+            mat.clearParam("AlphaDiscardThreshold"); // Don't use discard on glass
+        }
+        */
+
+        // 3. Double Sided (Optional)
+        // Useful for fences/leaves so you can see them from behind
+        mat.getAdditionalRenderState().setFaceCullMode(RenderState.FaceCullMode.Off);
+    }
+
+    /**
+     * true if nothing of this material can be see-through: no blending, color alpha is 1 and
+     * the color textures have no transparent pixels.
+     *
+     * @param texturesOpaque what's already known about the color textures, null to look at the pixels
+     */
+    static boolean isOpaque(Material mat, Boolean texturesOpaque) {
+        if (mat.getAdditionalRenderState().getBlendMode() != RenderState.BlendMode.Off) {
+            return false;
+        }
+        for (String name : new String[]{"BaseColor", "Diffuse", "Color"}) {
+            MatParam param = mat.getParam(name);
+            if (param != null && param.getValue() instanceof ColorRGBA && ((ColorRGBA) param.getValue()).a < 1f) {
+                return false;
+            }
+        }
+        return texturesOpaque != null ? texturesOpaque : texturesOpaque(mat);
+    }
+
+    /**
+     * true if none of the color textures of the material has a transparent pixel.
+     */
+    static boolean texturesOpaque(Material mat) {
+        for (String name : new String[]{"BaseColorMap", "DiffuseMap", "ColorMap"}) {
+            MatParam param = mat.getParam(name);
+            if (param instanceof MatParamTexture && hasTransparentPixels(((MatParamTexture) param).getTextureValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * looks at the actual pixels, formats we can't read count as transparent to be safe.
+     */
+    private static boolean hasTransparentPixels(Texture tex) {
+        if (tex == null || tex.getImage() == null) {
+            return false;
+        }
+        Image image = tex.getImage();
+        int alphaOffset;
+        switch (image.getFormat()) {
+            case RGB8:
+            case BGR8:
+            case RGB565:
+            case Luminance8:
+                return false;
+            case RGBA8:
+            case BGRA8:
+                alphaOffset = 3;
+                break;
+            case ABGR8:
+            case ARGB8:
+                alphaOffset = 0;
+                break;
+            default:
+                return true;
+        }
+        ByteBuffer data = image.getData(0);
+        if (data == null) {
+            return true;
+        }
+        // absolute gets, several materials can share the texture and read it at the same time
+        for (int i = alphaOffset; i < data.limit(); i += 4) {
+            if ((data.get(i) & 0xFF) < 255) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
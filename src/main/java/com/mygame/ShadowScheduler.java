@@ -0,0 +1,326 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.asset.AssetManager;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.light.DirectionalLight;
+import com.jme3.light.Light;
+import com.jme3.light.PointLight;
+import com.jme3.light.SpotLight;
+import com.jme3.math.ColorRGBA;
+import com.jme3.post.SceneProcessor;
+import com.jme3.profile.AppProfiler;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.shadow.AbstractShadowRenderer;
+import com.jme3.shadow.DirectionalLightShadowRenderer;
+import com.jme3.shadow.EdgeFilteringMode;
+import com.jme3.shadow.PointLightShadowRenderer;
+import com.jme3.shadow.SpotLightShadowRenderer;
+import com.jme3.texture.FrameBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * decides which lights get their shadow maps re-rendered each frame.
+ * the most important visible lights refresh every frame, the others take turns
+ * (round robin) and keep showing their last shadow map until it's their turn again.
+ */
+public class ShadowScheduler extends BaseAppState {
+
+    // the sun's cascades follow the camera so it always refreshes
+    private static final float ALWAYS_REFRESH = Float.MAX_VALUE;
+
+    private static final Comparator<Entry> BY_SCORE = (a, b) -> Float.compare(b.score, a.score);
+
+    private final AssetManager assetManager;
+    private final ViewPort viewPort;
+
+    private final List<Entry> entries = new ArrayList<>();  // stable order, used for round robin
+    private final List<Entry> ranked = new ArrayList<>();   // re-sorted every frame
+    private final BoundingSphere tmpSphere = new BoundingSphere();
+
+    private int fullRateLights = 2;
+    private int shadowPassBudget = 12; // point light = 6 passes, spot = 1, sun = 1 per split
+    private int roundRobinCursor = 0;
+    private int passesLastFrame = 0;
+
+    public ShadowScheduler(AssetManager assetManager, ViewPort viewPort) {
+        this.assetManager = assetManager;
+        this.viewPort = viewPort;
+    }
+
+    /**
+     * creates the shadow renderer for this light and adds it to the viewport right away,
+     * so it stays in front of any post processor added afterwards.
+     * @return false if the light type can't cast shadows (ambient, probes...)
+     */
+    public boolean addLight(Light light) {
+        AbstractShadowRenderer renderer;
+        int passes;
+
+        if (light instanceof DirectionalLight) {
+            DirectionalLightShadowRenderer dlsr = new DirectionalLightShadowRenderer(assetManager, 2048, 3);
+            dlsr.setLight((DirectionalLight) light);
+            renderer = dlsr;
+            passes = 3;
+        } else if (light instanceof SpotLight) {
+            SpotLightShadowRenderer slsr = new SpotLightShadowRenderer(assetManager, 2048);
+            slsr.setLight((SpotLight) light);
+            renderer = slsr;
+            passes = 1;
+        } else if (light instanceof PointLight) {
+            // cubemap, renders 6 times per refresh
+            PointLightShadowRenderer plsr = new PointLightShadowRenderer(assetManager, 512);
+            plsr.setLight((PointLight) light);
+            renderer = plsr;
+            passes = 6;
+        } else {
+            return false;
+        }
+        renderer.setEdgeFilteringMode(EdgeFilteringMode.PCFPOISSON);
+
+        Entry entry = new Entry(light, new CachedShadowProcessor(renderer), passes);
+        entries.add(entry);
+        ranked.add(entry);
+        viewPort.addProcessor(entry.processor);
+        return true;
+    }
+
+    /**
+     * how many of the top ranked lights refresh their shadows every frame.
+     */
+    public void setFullRateLights(int count) {
+        fullRateLights = Math.max(0, count);
+    }
+
+    public int getFullRateLights() {
+        return fullRateLights;
+    }
+
+    /**
+     * max number of shadow map render passes per frame. full rate lights always get theirs,
+     * the round robin lights share whatever is left.
+     */
+    public void setShadowPassBudget(int passes) {
+        shadowPassBudget = Math.max(0, passes);
+    }
+
+    public int getShadowPassBudget() {
+        return shadowPassBudget;
+    }
+
+    /**
+     * turns all shadows off without taking the processors out of the viewport (they have to
+     * stay in front of the post processor). the retro render mode has no shadow techniques.
+     */
+    public void setShadowsEnabled(boolean enabled) {
+        for (Entry entry : entries) {
+            entry.processor.suspended = !enabled;
+        }
+    }
+
+    public int getPassesLastFrame() {
+        return passesLastFrame;
+    }
+
+    public int getLightCount() {
+        return entries.size();
+    }
+
+    @Override
+    protected void initialize(Application app) {}
+
+    @Override
+    protected void cleanup(Application app) {
+        for (Entry entry : entries) {
+            viewPort.removeProcessor(entry.processor);
+        }
+        entries.clear();
+        ranked.clear();
+    }
+
+    @Override
+    protected void onEnable() {}
+
+    @Override
+    protected void onDisable() {
+        // no scheduling -> every light refreshes every frame like before
+        for (Entry entry : entries) {
+            entry.processor.refresh = true;
+        }
+    }
+
+    @Override
+    public void update(float tpf) {
+        Camera cam = getApplication().getCamera();
+
+        // the renderer leaves its culling plane state behind, reset it so every plane gets tested
+        int planeState = cam.getPlaneState();
+        cam.setPlaneState(0);
+        for (Entry entry : entries) {
+            score(entry, cam);
+        }
+        cam.setPlaneState(planeState);
+
+        ranked.sort(BY_SCORE);
+
+        int budget = shadowPassBudget;
+        int passes = 0;
+
+        // 1. full rate lights
+        for (int i = 0; i < ranked.size(); i++) {
+            Entry entry = ranked.get(i);
+            boolean fullRate = i < fullRateLights && entry.visible;
+            entry.processor.refresh = fullRate;
+            if (fullRate) {
+                budget -= entry.passes;
+                passes += entry.passes;
+            }
+        }
+
+        // 2. round robin over everything else, in stable order, until the budget runs out
+        int count = entries.size();
+        int next = roundRobinCursor;
+        for (int n = 0; n < count && budget > 0; n++) {
+            int index = (roundRobinCursor + n) % count;
+            Entry entry = entries.get(index);
+            if (entry.processor.refresh || !entry.visible || entry.passes > budget) {
+                continue;
+            }
+            entry.processor.refresh = true;
+            budget -= entry.passes;
+            passes += entry.passes;
+            next = index + 1;
+        }
+        roundRobinCursor = count > 0 ? next % count : 0;
+        passesLastFrame = passes;
+    }
+
+    /**
+     * rough importance of a light: brightness falling off with camera distance,
+     * heavily reduced when its area of influence is outside the view.
+     */
+    private void score(Entry entry, Camera cam) {
+        Light light = entry.light;
+        if (light instanceof DirectionalLight) {
+            entry.visible = true;
+            entry.score = ALWAYS_REFRESH;
+            return;
+        }
+
+        float range;
+        if (light instanceof PointLight) {
+            PointLight pl = (PointLight) light;
+            range = pl.getRadius();
+            tmpSphere.setCenter(pl.getPosition());
+        } else {
+            SpotLight sl = (SpotLight) light;
+            range = sl.getSpotRange();
+            tmpSphere.setCenter(sl.getPosition());
+        }
+
+        if (range > 0) {
+            tmpSphere.setRadius(range);
+            entry.visible = cam.contains(tmpSphere) != Camera.FrustumIntersect.Outside;
+        } else {
+            // radius 0 means infinite in jME
+            entry.visible = true;
+            range = 1f;
+        }
+
+        float dist = cam.getLocation().distance(tmpSphere.getCenter()) / range;
+        ColorRGBA c = light.getColor();
+        float contribution = 0.2126f * c.r + 0.7152f * c.g + 0.0722f * c.b;
+        entry.score = contribution / (1f + dist * dist);
+        if (!entry.visible) {
+            entry.score *= 0.1f;
+        }
+    }
+
+    private static class Entry {
+        final Light light;
+        final CachedShadowProcessor processor;
+        final int passes;
+        float score;
+        boolean visible = true;
+
+        Entry(Light light, CachedShadowProcessor processor, int passes) {
+            this.light = light;
+            this.processor = processor;
+            this.passes = passes;
+        }
+    }
+
+    /**
+     * wraps a shadow renderer so the shadow map pass can be skipped on frames where the light
+     * isn't scheduled. the post pass still runs and reuses the shadow map from the last refresh,
+     * which is fine for lights and geometry that don't move.
+     */
+    private static class CachedShadowProcessor implements SceneProcessor {
+
+        private final AbstractShadowRenderer renderer;
+        private boolean refresh = true;
+        private boolean hasShadowMap = false;
+        // no shadow map and no post pass at all
+        private boolean suspended = false;
+
+        CachedShadowProcessor(AbstractShadowRenderer renderer) {
+            this.renderer = renderer;
+        }
+
+        @Override
+        public void initialize(RenderManager rm, ViewPort vp) {
+            renderer.initialize(rm, vp);
+            hasShadowMap = false;
+        }
+
+        @Override
+        public void reshape(ViewPort vp, int w, int h) {
+            renderer.reshape(vp, w, h);
+        }
+
+        @Override
+        public boolean isInitialized() {
+            return renderer.isInitialized();
+        }
+
+        @Override
+        public void preFrame(float tpf) {
+            renderer.preFrame(tpf);
+        }
+
+        @Override
+        public void postQueue(RenderQueue rq) {
+            if (suspended) {
+                return;
+            }
+            if (refresh || !hasShadowMap) {
+                renderer.postQueue(rq);
+                hasShadowMap = true;
+            }
+        }
+
+        @Override
+        public void postFrame(FrameBuffer out) {
+            if (!suspended) {
+                renderer.postFrame(out);
+            }
+        }
+
+        @Override
+        public void cleanup() {
+            renderer.cleanup();
+            hasShadowMap = false;
+        }
+
+        @Override
+        public void setProfiler(AppProfiler profiler) {
+            renderer.setProfiler(profiler);
+        }
+    }
+}
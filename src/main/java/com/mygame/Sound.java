@@ -2,11 +2,9 @@ package com.mygame; //error check --> error caused in Main.javas
 
 import com.jme3.app.Application;
 import com.jme3.audio.AudioNode;
-import com.jme3.audio.AudioData.DataType;
 import com.jme3.font.BitmapText;
 import com.jme3.font.BitmapFont;
 import com.jme3.math.Vector3f;
-import com.jme3.scene.Spatial;
 import com.jme3.scene.Node;
 import com.jme3.input.KeyInput;
 import com.jme3.input.controls.ActionListener;
@@ -19,45 +17,39 @@ public class Sound {
 
     private Application app;           // Reference to the main app
     private Node rootNode, guiNode;
-    private final Vector3f penguinPos = new Vector3f(5, 3, 2);
-    private final Vector3f chairPos = new Vector3f(8, 0, -2);
-    private Spatial radioModel;
-    private Spatial chairModel;
+    // the models themselves are placed by Main through the PropInstancer
+    static final Vector3f RADIO_POS = new Vector3f(5, 3, 2);
+    static final Vector3f CHAIR_POS = new Vector3f(8, 0, -2);
+    private final Vector3f penguinPos = RADIO_POS;
+    private final AudioCache audioCache;
+    // only the playing station and (near the radio) the next one exist, the rest are null
     private AudioNode[] radios;
     private int currentRadio = 0;
     private final float maxDistance = 20;
     private float switchDiameter = 5;
 
+    private float volume = 0;
+
     private BitmapText helloText;
     private boolean textAttached = false;
 
-    public Sound(Application app, Node rootNode, Node guiNode) {
+    // hearing range (volume falloff) and the smaller zone where E switches the station
+    private final ProximityTriggers.Zone switchZone;
+
+    public Sound(Application app, Node rootNode, Node guiNode, AudioCache audioCache, ProximityTriggers triggers) {
         this.app = app;
+        this.audioCache = audioCache;
         this.rootNode = rootNode;
         this.guiNode = guiNode;
 
         init();
+        triggers.addZone(penguinPos, maxDistance, hearingListener);
+        switchZone = triggers.addZone(penguinPos, switchDiameter / 2, switchListener);
     }
 
     private void init() {
-        // Load radio model
-        radioModel = app.getAssetManager().loadModel("Models/radioModel.glb");
-        radioModel.setLocalTranslation(penguinPos);
-        rootNode.attachChild(radioModel);
-        
-        // Load chair model
-        chairModel = app.getAssetManager().loadModel("Models/chairModel.glb");
-        chairModel.setLocalTranslation(chairPos);
-        rootNode.attachChild(chairModel);
-
-        // Load audio
-        radios = new AudioNode[]{
-            loadRadio("Sounds/radio/mono_radio1.wav"),
-            loadRadio("Sounds/radio/mono_radio2.wav"),
-            loadRadio("Sounds/radio/mono_radio3.wav"),
-            loadRadio("Sounds/radio/mono_radio4.wav")
-
-        };
+        // Load audio (the tracks are long, the cache streams them)
+        radios = new AudioNode[Main.RADIO_TRACKS.length];
         playRadio(0);
 
         // Bind E key
@@ -71,50 +63,89 @@ public class Sound {
         helloText.setText("E");
     }
 
-    private AudioNode loadRadio(String path) {
-        AudioNode node = new AudioNode(app.getAssetManager(), path, DataType.Buffer);
-        node.setLooping(true);
-        node.setPositional(false);
-        node.setVolume(1f);
-        rootNode.attachChild(node);
-        return node;
+    private AudioNode loadRadio(int index) {
+        if (radios[index] == null) {
+            AudioNode node = audioCache.createNode(Main.RADIO_TRACKS[index]);
+            node.setLooping(true);
+            node.setPositional(false);
+            node.setVolume(volume);
+            rootNode.attachChild(node);
+            radios[index] = node;
+        }
+        return radios[index];
     }
 
     private void playRadio(int index) {
-        for (AudioNode r : radios) r.stop();
-        radios[index].play();
+        // everything except the new station goes, that frees the stream of the old one
+        for (int i = 0; i < radios.length; i++) {
+            if (i != index && radios[i] != null) {
+                audioCache.release(radios[i]);
+                radios[i] = null;
+            }
+        }
+        AudioNode radio = loadRadio(index);
+        radio.setVolume(volume);
+        radio.play();
         currentRadio = index;
+        // still next to the radio, the player can press E again right away
+        if (switchZone != null && switchZone.isInside()) {
+            loadRadio((index + 1) % radios.length);
+        }
+        audioCache.printStats();
     }
 
     private final ActionListener actionListener = new ActionListener() {
         @Override
         public void onAction(String name, boolean isPressed, float tpf) {
-            if (name.equals("SwitchRadio") && isPressed) {
-                float distance = app.getCamera().getLocation().distance(penguinPos);
-                if (distance <= switchDiameter / 2) {
-                    playRadio((currentRadio + 1) % radios.length);
-                }
+            if (name.equals("SwitchRadio") && isPressed && switchZone.isInside()) {
+                playRadio((currentRadio + 1) % radios.length);
             }
         }
     };
 
-    public void update(float tpf) {
-        float distance = app.getCamera().getLocation().distance(penguinPos);
-        float volume = Math.max(0, 1 - distance / maxDistance);
-        radios[currentRadio].setVolume(volume);
+    private final ProximityTriggers.ZoneListener hearingListener = new ProximityTriggers.ZoneListener() {
+        @Override
+        public void onEnter(ProximityTriggers.Zone zone) {}
+
+        @Override
+        public void onExit(ProximityTriggers.Zone zone) {
+            setVolume(0);
+        }
+
+        @Override
+        public void onStay(ProximityTriggers.Zone zone, Vector3f position, float tpf) {
+            float distance = position.distance(penguinPos);
+            setVolume(Math.max(0, 1 - distance / maxDistance));
+        }
+    };
+
+    private final ProximityTriggers.ZoneListener switchListener = new ProximityTriggers.ZoneListener() {
+        @Override
+        public void onEnter(ProximityTriggers.Zone zone) {
+            // the player might switch, open the next station now so it starts without a hitch
+            loadRadio((currentRadio + 1) % radios.length);
 
-        // Show text when close
-        if (distance <= switchDiameter / 2) {
+            // Show text when close
             if (!textAttached) {
                 helloText.setLocalTranslation(10, app.getContext().getSettings().getHeight() - 10, 0);
                 guiNode.attachChild(helloText);
                 textAttached = true;
             }
-        } else {
+        }
+
+        @Override
+        public void onExit(ProximityTriggers.Zone zone) {
             if (textAttached) {
                 guiNode.detachChild(helloText);
                 textAttached = false;
             }
         }
+    };
+
+    private void setVolume(float volume) {
+        if (volume != this.volume) {
+            this.volume = volume;
+            radios[currentRadio].setVolume(volume);
+        }
     }
-}
\ No newline at end of file
+}
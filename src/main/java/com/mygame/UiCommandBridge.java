@@ -0,0 +1,197 @@
+package com.mygame;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import io.tlf.jme.jfx.JavaFxUI;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * the one way commands go between the JavaFX thread and the jME thread, in both directions.
+ *
+ * - commands for a Slot only keep the newest one: dragging the volume slider sends dozens of
+ *   values per frame, the game applies the last one once. same for the loading progress the
+ *   other way.
+ * - everything else is queued and runs in order.
+ * - the game side runs its commands at the start of the frame (this state's update). the UI side
+ *   is flushed with one runInJavaFxThread for everything that came in since the last flush,
+ *   instead of one per command.
+ *
+ * nothing here locks, posting is a queue offer or an atomic swap and can be done from any thread.
+ * printStats shows how deep the queues got, how long commands waited and how many were coalesced.
+ */
+public class UiCommandBridge extends BaseAppState {
+
+    /**
+     * things where only the latest value matters.
+     */
+    public enum Slot {
+        // UI -> game
+        VOLUME, QUALITY, SSAO, RENDER_MODE, CURSOR, DISPLAY_MODE, RESOLUTION,
+        // game -> UI
+        LOADING_PROGRESS, LAYOUT
+    }
+
+    private static final Slot[] SLOTS = Slot.values();
+
+    private static final class Command {
+        final Runnable action;
+        final long queuedAt = System.nanoTime();
+
+        Command(Runnable action) {
+            this.action = action;
+        }
+    }
+
+    private final Channel toGame = new Channel("UI -> game");
+    private final Channel toUi = new Channel("game -> UI");
+    // a flush is already waiting on the JavaFX thread
+    private final AtomicBoolean uiFlushPending = new AtomicBoolean(false);
+
+    /**
+     * runs action on the jME thread at the start of the next frame.
+     */
+    public void runInGame(Runnable action) {
+        toGame.post(action);
+    }
+
+    /**
+     * like runInGame, but replaces whatever is still waiting for the same slot.
+     */
+    public void runInGame(Slot slot, Runnable action) {
+        toGame.post(slot, action);
+    }
+
+    /**
+     * runs action on the JavaFX thread with the next flush (once per frame).
+     */
+    public void runInUi(Runnable action) {
+        toUi.post(action);
+    }
+
+    /**
+     * like runInUi, but replaces whatever is still waiting for the same slot.
+     */
+    public void runInUi(Slot slot, Runnable action) {
+        toUi.post(slot, action);
+    }
+
+    @Override
+    protected void initialize(Application app) {}
+
+    @Override
+    protected void cleanup(Application app) {
+        printStats();
+    }
+
+    @Override
+    protected void onEnable() {}
+
+    @Override
+    protected void onDisable() {}
+
+    @Override
+    public void update(float tpf) {
+        toGame.drain();
+
+        // everything for the UI from this frame (and the loader threads) goes over in one go
+        if (toUi.depth.get() > 0 && uiFlushPending.compareAndSet(false, true)) {
+            JavaFxUI.getInstance().runInJavaFxThread(() -> {
+                uiFlushPending.set(false);
+                toUi.drain();
+            });
+        }
+    }
+
+    public int getGameQueueDepth() {
+        return toGame.depth.get();
+    }
+
+    public int getUiQueueDepth() {
+        return toUi.depth.get();
+    }
+
+    public void printStats() {
+        System.out.println("--- UI COMMAND BRIDGE ---");
+        toGame.printStats();
+        toUi.printStats();
+        System.out.println("-------------------------");
+    }
+
+    /**
+     * one direction: a queue plus one coalescing slot per Slot. drain() is only ever called from
+     * the receiving thread, so the latency numbers are only written by that one thread.
+     */
+    private static final class Channel {
+        private final String name;
+        private final ConcurrentLinkedQueue<Command> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicReferenceArray<Command> slots = new AtomicReferenceArray<>(SLOTS.length);
+        // ConcurrentLinkedQueue.size() walks the whole queue, this is kept on the side
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicInteger maxDepth = new AtomicInteger();
+        private final LongAdder coalesced = new LongAdder();
+
+        private volatile long executed;
+        private volatile long totalLatencyNanos;
+        private volatile long maxLatencyNanos;
+
+        Channel(String name) {
+            this.name = name;
+        }
+
+        void post(Runnable action) {
+            queue.offer(new Command(action));
+            grow();
+        }
+
+        void post(Slot slot, Runnable action) {
+            if (slots.getAndSet(slot.ordinal(), new Command(action)) == null) {
+                grow();
+            } else {
+                coalesced.increment();
+            }
+        }
+
+        private void grow() {
+            int now = depth.incrementAndGet();
+            maxDepth.accumulateAndGet(now, Math::max);
+        }
+
+        /**
+         * the queued commands in order, then the newest value of every slot.
+         */
+        void drain() {
+            Command command;
+            while ((command = queue.poll()) != null) {
+                run(command);
+            }
+            for (int i = 0; i < SLOTS.length; i++) {
+                command = slots.getAndSet(i, null);
+                if (command != null) {
+                    run(command);
+                }
+            }
+        }
+
+        private void run(Command command) {
+            depth.decrementAndGet();
+            long latency = System.nanoTime() - command.queuedAt;
+            executed++;
+            totalLatencyNanos += latency;
+            if (latency > maxLatencyNanos) {
+                maxLatencyNanos = latency;
+            }
+            command.action.run();
+        }
+
+        void printStats() {
+            long count = executed;
+            System.out.printf("%s: %d run, %d coalesced, depth %d (max %d), latency avg %.2f ms max %.2f ms%n",
+                    name, count, coalesced.sum(), depth.get(), maxDepth.get(),
+                    count > 0 ? totalLatencyNanos / 1e6 / count : 0.0, maxLatencyNanos / 1e6);
+        }
+    }
+}